@@ -0,0 +1,155 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for recorders. Adds queries beyond the ones of the {@link MonkeyRecorder} interface, implemented on top of
+ * the findEvents methods, so that a datastore can override them with something cheaper. They are kept out of the
+ * interface so that recorders written against it keep compiling; callers holding a plain MonkeyRecorder go through the
+ * static methods, which use the overrides when the recorder extends this class.
+ */
+public abstract class AbstractMonkeyRecorder implements MonkeyRecorder {
+
+    /** Sorts events by event time, oldest first. */
+    private static final Comparator<Event> BY_EVENT_TIME = new Comparator<Event>() {
+        @Override
+        public int compare(Event e1, Event e2) {
+            return e1.eventTime().compareTo(e2.eventTime());
+        }
+    };
+
+    /**
+     * Visit events. Unlike the findEvents methods, the matching events are not collected in a list but passed to
+     * the visitor as they are fetched, and the query stops as soon as the limit is reached or the visitor returns
+     * false. The default implementation fetches the events with findEvents and sorts them.
+     *
+     * @param monkeyType
+     *            the monkey type
+     * @param eventType
+     *            the event type, or null for events of any type
+     * @param query
+     *            arbitrary map of strings to used to filter the results
+     * @param after
+     *            the after
+     * @param limit
+     *            the maximum number of events to visit, 0 for no limit
+     * @param order
+     *            the order to visit the events in
+     * @param visitor
+     *            the visitor
+     */
+    public void visitEvents(MonkeyType monkeyType, EventType eventType, Map<String, String> query, Date after,
+            int limit, Order order, EventVisitor visitor) {
+        visitFoundEvents(this, monkeyType, eventType, query, after, limit, order, visitor);
+    }
+
+    /**
+     * Visit the events of any recorder, see {@link #visitEvents(MonkeyType, EventType, Map, Date, int, Order,
+     * EventVisitor)}.
+     *
+     * @param recorder
+     *            the recorder
+     * @param monkeyType
+     *            the monkey type
+     * @param eventType
+     *            the event type, or null for events of any type
+     * @param query
+     *            arbitrary map of strings to used to filter the results
+     * @param after
+     *            the after
+     * @param limit
+     *            the maximum number of events to visit, 0 for no limit
+     * @param order
+     *            the order to visit the events in
+     * @param visitor
+     *            the visitor
+     */
+    public static void visitEvents(MonkeyRecorder recorder, MonkeyType monkeyType, EventType eventType,
+            Map<String, String> query, Date after, int limit, Order order, EventVisitor visitor) {
+        if (recorder instanceof AbstractMonkeyRecorder) {
+            ((AbstractMonkeyRecorder) recorder).visitEvents(monkeyType, eventType, query, after, limit, order,
+                    visitor);
+        } else {
+            visitFoundEvents(recorder, monkeyType, eventType, query, after, limit, order, visitor);
+        }
+    }
+
+    /**
+     * Count events. Same as the size of the list returned by
+     * {@link #findEvents(MonkeyType, EventType, Map, Date)}, which is what the default implementation does, but
+     * datastores that can count without fetching the events themselves override it.
+     *
+     * @param monkeyType
+     *            the monkey type
+     * @param eventType
+     *            the event type
+     * @param query
+     *            arbitrary map of strings to used to filter the results
+     * @param after
+     *            the after
+     * @return the number of events
+     */
+    public int countEvents(MonkeyType monkeyType, EventType eventType, Map<String, String> query, Date after) {
+        return findEvents(monkeyType, eventType, query, after).size();
+    }
+
+    /**
+     * Count the events of any recorder, see {@link #countEvents(MonkeyType, EventType, Map, Date)}.
+     *
+     * @param recorder
+     *            the recorder
+     * @param monkeyType
+     *            the monkey type
+     * @param eventType
+     *            the event type
+     * @param query
+     *            arbitrary map of strings to used to filter the results
+     * @param after
+     *            the after
+     * @return the number of events
+     */
+    public static int countEvents(MonkeyRecorder recorder, MonkeyType monkeyType, EventType eventType,
+            Map<String, String> query, Date after) {
+        if (recorder instanceof AbstractMonkeyRecorder) {
+            return ((AbstractMonkeyRecorder) recorder).countEvents(monkeyType, eventType, query, after);
+        }
+        return recorder.findEvents(monkeyType, eventType, query, after).size();
+    }
+
+    private static void visitFoundEvents(MonkeyRecorder recorder, MonkeyType monkeyType, EventType eventType,
+            Map<String, String> query, Date after, int limit, Order order, EventVisitor visitor) {
+        List<Event> evts = new ArrayList<Event>(eventType == null
+                ? recorder.findEvents(monkeyType, query, after)
+                : recorder.findEvents(monkeyType, eventType, query, after));
+        Collections.sort(evts, order == Order.NEWEST_FIRST ? Collections.reverseOrder(BY_EVENT_TIME) : BY_EVENT_TIME);
+        int visited = 0;
+        for (Event evt : evts) {
+            visited++;
+            if (!visitor.visit(evt) || visited == limit) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * A snapshot of the properties of an instance that the monkeys base their decisions on. It is fetched in a single
+ * call to the cloud, so that answering several questions about the same instance does not cost several calls.
+ */
+public class InstanceMetadata {
+
+    /** The instance id. */
+    private final String instanceId;
+
+    /** The ids of all the volumes attached to the instance, including the root volume. */
+    private final List<String> volumeIds;
+
+    /** The id of the root volume, null if the root device is not an attached volume. */
+    private final String rootVolumeId;
+
+    /** The VPC id, null if the instance is not in a VPC. */
+    private final String vpcId;
+
+    /** The ids of the security groups of the instance. */
+    private final List<String> securityGroupIds;
+
+    /** Whether the security groups of the instance can be changed. */
+    private final boolean canChangeSecurityGroups;
+
+    /**
+     * Instantiates a new instance metadata.
+     *
+     * @param instanceId
+     *            the instance id
+     * @param volumeIds
+     *            the ids of all the attached volumes, including the root volume
+     * @param rootVolumeId
+     *            the id of the root volume, or null if the root device is not an attached volume
+     * @param vpcId
+     *            the VPC id, or null if the instance is not in a VPC
+     * @param securityGroupIds
+     *            the ids of the security groups of the instance
+     * @param canChangeSecurityGroups
+     *            whether the security groups of the instance can be changed
+     */
+    public InstanceMetadata(String instanceId, List<String> volumeIds, String rootVolumeId, String vpcId,
+            List<String> securityGroupIds, boolean canChangeSecurityGroups) {
+        Validate.notEmpty(instanceId);
+        Validate.notNull(volumeIds);
+        Validate.notNull(securityGroupIds);
+        this.instanceId = instanceId;
+        this.volumeIds = Collections.unmodifiableList(new ArrayList<String>(volumeIds));
+        this.rootVolumeId = rootVolumeId;
+        this.vpcId = vpcId;
+        this.securityGroupIds = Collections.unmodifiableList(new ArrayList<String>(securityGroupIds));
+        this.canChangeSecurityGroups = canChangeSecurityGroups;
+    }
+
+    /**
+     * Gets the instance id.
+     *
+     * @return the instance id
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Gets the ids of the attached volumes, same as {@link CloudClient#listAttachedVolumes(String, boolean)}.
+     *
+     * @param includeRoot
+     *            if the root volume is an attached volume, should we include it?
+     * @return the volume ids
+     */
+    public List<String> getAttachedVolumes(boolean includeRoot) {
+        if (includeRoot || rootVolumeId == null) {
+            return volumeIds;
+        }
+        List<String> withoutRoot = new ArrayList<String>(volumeIds);
+        withoutRoot.remove(rootVolumeId);
+        return Collections.unmodifiableList(withoutRoot);
+    }
+
+    /**
+     * Gets the id of the root volume.
+     *
+     * @return the root volume id, or null if the root device is not an attached volume
+     */
+    public String getRootVolumeId() {
+        return rootVolumeId;
+    }
+
+    /**
+     * Checks if the root device is an attached (e.g. EBS) volume.
+     *
+     * @return true iff the root device is an attached volume
+     */
+    public boolean isRootVolumeEbs() {
+        return rootVolumeId != null;
+    }
+
+    /**
+     * Gets the VPC id.
+     *
+     * @return the VPC id, or null if the instance is not in a VPC
+     */
+    public String getVpcId() {
+        return vpcId;
+    }
+
+    /**
+     * Gets the ids of the security groups of the instance.
+     *
+     * @return the security group ids
+     */
+    public List<String> getSecurityGroupIds() {
+        return securityGroupIds;
+    }
+
+    /**
+     * Checks if the security groups of the instance can be changed, same as
+     * {@link CloudClient#canChangeInstanceSecurityGroups(String)}.
+     *
+     * @return true iff we can change security groups
+     */
+    public boolean canChangeSecurityGroups() {
+        return canChangeSecurityGroups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("InstanceMetadata[id=%s, volumes=%s, root=%s, vpc=%s, groups=%s]",
+                instanceId, volumeIds, rootVolumeId, vpcId, securityGroupIds);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy;
+
+import java.util.Map;
+
+/**
+ * The Interface InstanceMetadataSource. Implemented by the {@link CloudClient}s that can describe several instances
+ * at once; for the others, the metadata is put together from the per instance CloudClient calls.
+ */
+public interface InstanceMetadataSource {
+
+    /**
+     * Describes the attached volumes, root device, VPC and security groups of a set of instances, using as few
+     * calls to the cloud as possible.
+     *
+     * @param instanceIds
+     *            the instance ids
+     * @return the metadata of the instances, keyed by instance id. Instances that no longer exist are left out.
+     */
+    Map<String, InstanceMetadata> describeInstanceMetadata(String... instanceIds);
+}
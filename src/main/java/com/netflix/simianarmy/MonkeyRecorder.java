@@ -95,6 +95,32 @@ public interface MonkeyRecorder {
         Event addField(String name, String value);
     }
 
+    /**
+     * The order events are visited in.
+     */
+    public enum Order {
+        /** The most recent events first. */
+        NEWEST_FIRST,
+        /** The oldest events first. */
+        OLDEST_FIRST
+    }
+
+    /**
+     * The Interface EventVisitor. Receives the events of a query one at a time, as they are fetched, so that a caller
+     * that only needs some of them does not pay for fetching and holding on to all of them.
+     */
+    public interface EventVisitor {
+
+        /**
+         * Visit an event.
+         *
+         * @param evt
+         *            the event
+         * @return true to keep visiting events, false to stop the query
+         */
+        boolean visit(Event evt);
+    }
+
     /**
      * New event.
      *
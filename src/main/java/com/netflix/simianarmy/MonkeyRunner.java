@@ -17,6 +17,8 @@
  */
 package com.netflix.simianarmy;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.Collections;
 import java.util.HashMap;
@@ -65,6 +67,23 @@ public enum MonkeyRunner {
         for (Monkey monkey : monkeys) {
             LOGGER.info("Stopping " + monkey.type().name() + " Monkey");
             monkey.stop();
+            closeContext(monkey);
+        }
+    }
+
+    /**
+     * Releases the resources held by the context of a stopped monkey, such as pooled connections.
+     *
+     * @param monkey
+     *            the stopped monkey
+     */
+    private void closeContext(Monkey monkey) {
+        if (monkey.context() instanceof Closeable) {
+            try {
+                ((Closeable) monkey.context()).close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close the context of the " + monkey.type().name() + " Monkey", e);
+            }
         }
     }
 
@@ -17,30 +17,43 @@
  */
 package com.netflix.simianarmy.aws;
 
+import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.simpledb.AmazonSimpleDB;
 import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.BatchPutAttributesRequest;
 import com.amazonaws.services.simpledb.model.CreateDomainRequest;
 import com.amazonaws.services.simpledb.model.Item;
 import com.amazonaws.services.simpledb.model.ListDomainsResult;
 import com.amazonaws.services.simpledb.model.PutAttributesRequest;
 import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.amazonaws.services.simpledb.model.ReplaceableItem;
 import com.amazonaws.services.simpledb.model.SelectRequest;
 import com.amazonaws.services.simpledb.model.SelectResult;
+import com.netflix.simianarmy.AbstractMonkeyRecorder;
 import com.netflix.simianarmy.EventType;
 import com.netflix.simianarmy.MonkeyRecorder;
 import com.netflix.simianarmy.MonkeyType;
@@ -50,12 +63,37 @@ import com.netflix.simianarmy.client.aws.AWSClient;
 
 /**
  * The Class SimpleDBRecorder. Records events to and fetched events from a Amazon SimpleDB table (default SIMIAN_ARMY)
+ *
+ * Events are written as they are recorded, unless {@link #startAsyncWriter(int)} was called: events are then queued
+ * and written by a background thread with BatchPutAttributes calls of up to 25 events, retried with exponential
+ * backoff while SimpleDB is throttling. When the queue is full, events are written by the recording thread. Queued
+ * events are written before any query and when the recorder is closed. The events of a batch that still fails are
+ * written one at a time, and those that fail again are kept and written again by {@link #flush()} and
+ * {@link #close()}, which throw if they cannot be written then either.
  */
 @SuppressWarnings("serial")
-public class SimpleDBRecorder implements MonkeyRecorder {
+public class SimpleDBRecorder extends AbstractMonkeyRecorder implements Closeable {
     /** The Constant LOGGER. */
     private static final Logger LOGGER = LoggerFactory.getLogger(SimpleDBRecorder.class);
 
+    /** The maximum number of items of a BatchPutAttributes call. */
+    public static final int MAX_BATCH_PUT_ITEMS = 25;
+
+    /** The maximum number of attempts to write a batch while SimpleDB is throttling. */
+    private static final int MAX_BATCH_PUT_ATTEMPTS = 8;
+
+    /** The backoff before the first retry of a throttled batch, doubled on every retry. */
+    private static final long BASE_BACKOFF_MILLIS = 100;
+
+    /** The enums decoded from the "name|type" strings stored in SimpleDB, keyed by those strings. */
+    private static final ConcurrentMap<String, NamedType> DECODED_ENUMS = new ConcurrentHashMap<String, NamedType>();
+
+    /** The maximum number of items SimpleDB returns per select. */
+    private static final int MAX_SELECT_LIMIT = 2500;
+
+    /** How long closing the recorder waits for the queued events to be written. */
+    private static final long CLOSE_TIMEOUT_MILLIS = 30000;
+
     private final AmazonSimpleDB simpleDBClient;
 
     private final String region;
@@ -63,6 +101,25 @@ public class SimpleDBRecorder implements MonkeyRecorder {
     /** The domain. */
     private final String domain;
 
+    /** The events waiting for the background writer, null if events are written as they are recorded. */
+    private volatile BlockingQueue<Event> queue;
+
+    /** The background writer. */
+    private Thread writer;
+
+    /** Set when the recorder is closed, to stop the background writer once the queue is empty. */
+    private volatile boolean closed;
+
+    /** The number of events queued, and the number of those the writer is done with, written or not. */
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+
+    /** Notified every time the writer is done with a batch. */
+    private final Object progress = new Object();
+
+    /** The events the writer failed to write, written again by the next flush or close. */
+    private final Queue<Event> unwritten = new ConcurrentLinkedQueue<Event>();
+
     /**
      * The Enum Keys.
      */
@@ -128,7 +185,8 @@ public class SimpleDBRecorder implements MonkeyRecorder {
     }
 
     /**
-     * Value to enum. Converts a "name|type" string back to an enum.
+     * Value to enum. Converts a "name|type" string back to an enum. The conversions are cached, as every event of
+     * every query needs two of them.
      *
      * @param value
      *            the value
@@ -136,6 +194,19 @@ public class SimpleDBRecorder implements MonkeyRecorder {
      */
     private static <T extends NamedType> T valueToEnum(
             Class<T> type, String value) {
+        NamedType cached = DECODED_ENUMS.get(value);
+        if (cached == null) {
+            cached = decodeEnum(value);
+            DECODED_ENUMS.putIfAbsent(value, cached);
+        }
+        if (!type.isInstance(cached)) {
+            throw new RuntimeException("value " + value + " cannot be assigned to a variable of this type: "
+                    + type.getCanonicalName());
+        }
+        return type.cast(cached);
+    }
+
+    private static NamedType decodeEnum(String value) {
         // parts = [enum value, enum class type]
         String[] parts = value.split("\\|", 2);
         if (parts.length < 2) {
@@ -151,14 +222,14 @@ public class SimpleDBRecorder implements MonkeyRecorder {
         if (!enumClass.isEnum()) {
             throw new RuntimeException("value " + value + " does not appear to be of an enum type");
         }
-        if (!type.isAssignableFrom(enumClass)) {
+        if (!NamedType.class.isAssignableFrom(enumClass)) {
             throw new RuntimeException("value " + value + " cannot be assigned to a variable of this type: "
-                    + type.getCanonicalName());
+                    + NamedType.class.getCanonicalName());
         }
         @SuppressWarnings("rawtypes")
         Class<? extends Enum> enumType = enumClass.asSubclass(Enum.class);
         @SuppressWarnings("unchecked")
-        T enumValue = (T) Enum.valueOf(enumType, parts[0]);
+        NamedType enumValue = (NamedType) Enum.valueOf(enumType, parts[0]);
         return enumValue;
     }
 
@@ -168,9 +239,248 @@ public class SimpleDBRecorder implements MonkeyRecorder {
         return new BasicRecorderEvent(monkeyType, eventType, reg, id);
     }
 
+    /**
+     * Starts writing the recorded events from a background thread, in batches.
+     *
+     * @param queueCapacity
+     *            the maximum number of events waiting to be written; beyond it events are written as they are recorded
+     */
+    public synchronized void startAsyncWriter(int queueCapacity) {
+        Validate.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+        if (writer != null) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<Event>(queueCapacity);
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeQueuedEvents();
+            }
+        }, "SimpleDBRecorder-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
     /** {@inheritDoc} */
     @Override
     public void recordEvent(Event evt) {
+        BlockingQueue<Event> q = queue;
+        if (q != null && !closed) {
+            queued.incrementAndGet();
+            if (q.offer(evt)) {
+                return;
+            }
+            // the writer is falling behind; slow the recording down rather than dropping events
+            processed.incrementAndGet();
+        }
+        putEvent(evt);
+    }
+
+    /**
+     * Writes a single event with a PutAttributes call.
+     */
+    private void putEvent(Event evt) {
+        PutAttributesRequest putReq = new PutAttributesRequest(domain, itemName(evt), attributes(evt));
+        sdbClient().putAttributes(putReq);
+    }
+
+    /**
+     * Waits until all the events queued so far have been written, and writes again the events the background writer
+     * failed to write.
+     *
+     * @throws AmazonClientException
+     *             if some events still cannot be written; they are kept for the next flush
+     */
+    public void flush() {
+        awaitQueued();
+        writeUnwritten();
+    }
+
+    /**
+     * Waits until the background writer is done with all the events queued so far, written or not.
+     */
+    private void awaitQueued() {
+        if (queue == null) {
+            return;
+        }
+        long target = queued.get();
+        synchronized (progress) {
+            while (processed.get() < target) {
+                if (!writer.isAlive()) {
+                    // nobody left to write them; do it here
+                    drainQueue();
+                    return;
+                }
+                try {
+                    progress.wait(BASE_BACKOFF_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes again the events the background writer failed to write, from the calling thread.
+     */
+    private void writeUnwritten() {
+        Event evt;
+        while ((evt = unwritten.poll()) != null) {
+            try {
+                putEvent(evt);
+            } catch (RuntimeException e) {
+                unwritten.add(evt);
+                LOGGER.error("Failed to write {} events to SimpleDB", unwritten.size());
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the queued events and stops the background writer. Events recorded afterwards are written as they are
+     * recorded.
+     *
+     * @throws AmazonClientException
+     *             if some events cannot be written
+     */
+    @Override
+    public void close() {
+        Thread w;
+        synchronized (this) {
+            if (writer == null || closed) {
+                return;
+            }
+            closed = true;
+            w = writer;
+        }
+        try {
+            w.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (w.isAlive()) {
+            LOGGER.warn("Timed out waiting for the queued events to be written, {} events are left",
+                    queued.get() - processed.get());
+        } else {
+            drainQueue();
+        }
+        writeUnwritten();
+    }
+
+    /**
+     * The loop of the background writer.
+     */
+    private void writeQueuedEvents() {
+        while (!closed || !queue.isEmpty()) {
+            Event first;
+            try {
+                first = queue.poll(BASE_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                LOGGER.warn("SimpleDB writer interrupted, {} events left in the queue", queue.size());
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            List<Event> batch = new ArrayList<Event>(MAX_BATCH_PUT_ITEMS);
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH_PUT_ITEMS - 1);
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * Writes whatever is left in the queue from the calling thread.
+     */
+    private void drainQueue() {
+        List<Event> batch = new ArrayList<Event>(MAX_BATCH_PUT_ITEMS);
+        while (queue.drainTo(batch, MAX_BATCH_PUT_ITEMS) > 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a batch of events, splitting it where an item name repeats since SimpleDB rejects those batches.
+     */
+    private void writeBatch(List<Event> batch) {
+        try {
+            Map<String, ReplaceableItem> items = new LinkedHashMap<String, ReplaceableItem>();
+            for (Event evt : batch) {
+                String name = itemName(evt);
+                if (items.containsKey(name)) {
+                    batchPut(new ArrayList<ReplaceableItem>(items.values()));
+                    items.clear();
+                }
+                items.put(name, new ReplaceableItem(name, attributes(evt)));
+            }
+            batchPut(new ArrayList<ReplaceableItem>(items.values()));
+        } catch (RuntimeException e) {
+            // a single bad event or a long outage; write what can be written and keep the rest for the next flush
+            LOGGER.warn(String.format("Failed to write a batch of %d events to SimpleDB, writing them one at a time",
+                    batch.size()), e);
+            for (Event evt : batch) {
+                try {
+                    putEvent(evt);
+                } catch (RuntimeException putError) {
+                    LOGGER.debug("Failed to write event " + itemName(evt), putError);
+                    unwritten.add(evt);
+                }
+            }
+        } finally {
+            processed.addAndGet(batch.size());
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Makes a BatchPutAttributes call, retrying with exponential backoff while SimpleDB is throttling.
+     */
+    private void batchPut(List<ReplaceableItem> items) {
+        BatchPutAttributesRequest request = new BatchPutAttributesRequest(domain, items);
+        long backoff = BASE_BACKOFF_MILLIS;
+        for (int attempt = 1;; attempt++) {
+            try {
+                sdbClient().batchPutAttributes(request);
+                return;
+            } catch (AmazonServiceException e) {
+                if (!isThrottling(e) || attempt >= MAX_BATCH_PUT_ATTEMPTS) {
+                    throw e;
+                }
+                LOGGER.debug("SimpleDB is throttling, retrying in {} ms", backoff);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting to retry a SimpleDB write", e);
+            }
+            backoff *= 2;
+        }
+    }
+
+    private static boolean isThrottling(AmazonServiceException e) {
+        final int serviceUnavailable = 503;
+        return e.getStatusCode() == serviceUnavailable
+                || "ServiceUnavailable".equals(e.getErrorCode())
+                || "Throttling".equals(e.getErrorCode());
+    }
+
+    /**
+     * Gets the name of the SimpleDB item of an event.
+     */
+    private String itemName(Event evt) {
+        // Let pk contain the timestamp so that the same resource can have multiple events.
+        return String.format("%s-%s-%s-%s", evt.monkeyType().name(), evt.id(), region, evt.eventTime().getTime());
+    }
+
+    /**
+     * Gets the SimpleDB attributes of an event.
+     */
+    private List<ReplaceableAttribute> attributes(Event evt) {
         String evtTime = String.valueOf(evt.eventTime().getTime());
         List<ReplaceableAttribute> attrs = new LinkedList<ReplaceableAttribute>();
         attrs.add(new ReplaceableAttribute(Keys.id.name(), evt.id(), true));
@@ -185,15 +495,11 @@ public class SimpleDBRecorder implements MonkeyRecorder {
             }
             attrs.add(new ReplaceableAttribute(pair.getKey(), pair.getValue(), true));
         }
-        // Let pk contain the timestamp so that the same resource can have multiple events.
-        String pk = String.format("%s-%s-%s-%s", evt.monkeyType().name(), evt.id(), region, evtTime);
-        PutAttributesRequest putReq = new PutAttributesRequest(domain, pk, attrs);
-        sdbClient().putAttributes(putReq);
-
+        return attrs;
     }
 
     /**
-     * Find events.
+     * Find events. Events are looked up in the recorder's region unless the query map names a region explicitly.
      *
      * @param queryMap
      *            the query map
@@ -202,41 +508,142 @@ public class SimpleDBRecorder implements MonkeyRecorder {
      * @return the list
      */
     protected List<Event> findEvents(Map<String, String> queryMap, long after) {
-        StringBuilder query = new StringBuilder(
-                String.format("select * from `%s` where region = '%s'", domain, region));
-        for (Map.Entry<String, String> pair : queryMap.entrySet()) {
-            query.append(String.format(" and %s = '%s'", pair.getKey(), pair.getValue()));
-        }
-        query.append(String.format(" and eventTime > '%d'", after));
+        final List<Event> list = new LinkedList<Event>();
         // always return with most recent record first
-        query.append(" order by eventTime desc");
+        visitEvents(queryMap, after, 0, Order.NEWEST_FIRST, new EventVisitor() {
+            @Override
+            public boolean visit(Event evt) {
+                list.add(evt);
+                return true;
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Visit events. Events are looked up in the recorder's region unless the query map names a region explicitly.
+     * Results are fetched a page at a time, and no more pages are fetched once the visitor is done.
+     *
+     * @param queryMap
+     *            the query map
+     * @param after
+     *            the start time to query for all events after
+     * @param limit
+     *            the maximum number of events to visit, 0 for no limit
+     * @param order
+     *            the order to visit the events in
+     * @param visitor
+     *            the visitor
+     */
+    protected void visitEvents(Map<String, String> queryMap, long after, int limit, Order order,
+            EventVisitor visitor) {
+        awaitQueued();
+        StringBuilder query = new StringBuilder(String.format("select * from `%s` where ", domain));
+        appendConditions(query, queryMap, after);
+        query.append(order == Order.OLDEST_FIRST ? " order by eventTime asc" : " order by eventTime desc");
+        if (limit > 0) {
+            // the limit is the page size; it has to stay the same on every page
+            query.append(String.format(" limit %d", Math.min(limit, MAX_SELECT_LIMIT)));
+        }
 
-        List<Event> list = new LinkedList<Event>();
         SelectRequest request = new SelectRequest(query.toString());
         request.setConsistentRead(Boolean.TRUE);
 
+        int visited = 0;
+        SelectResult result = new SelectResult();
+        do {
+            result = sdbClient().select(request.withNextToken(result.getNextToken()));
+            for (Item item : result.getItems()) {
+                visited++;
+                if (!visitor.visit(toEvent(item)) || visited == limit) {
+                    return;
+                }
+            }
+        } while (result.getNextToken() != null);
+    }
+
+    /**
+     * Count events. Events are counted in the recorder's region unless the query map names a region explicitly.
+     *
+     * @param queryMap
+     *            the query map
+     * @param after
+     *            the start time to count all events after
+     * @return the number of events
+     */
+    protected int countEvents(Map<String, String> queryMap, long after) {
+        awaitQueued();
+        StringBuilder query = new StringBuilder(String.format("select count(*) from `%s` where ", domain));
+        appendConditions(query, queryMap, after);
+        SelectRequest request = new SelectRequest(query.toString());
+        request.setConsistentRead(Boolean.TRUE);
+
+        // a count that takes too long is returned in parts, with a NextToken to continue from
+        int count = 0;
         SelectResult result = new SelectResult();
         do {
             result = sdbClient().select(request.withNextToken(result.getNextToken()));
             for (Item item : result.getItems()) {
-                Map<String, String> fields = new HashMap<String, String>();
-                Map<String, String> res = new HashMap<String, String>();
                 for (Attribute attr : item.getAttributes()) {
-                    if (Keys.KEYSET.contains(attr.getName())) {
-                        res.put(attr.getName(), attr.getValue());
-                    } else {
-                        fields.put(attr.getName(), attr.getValue());
+                    if ("Count".equals(attr.getName())) {
+                        count += Integer.parseInt(attr.getValue());
                     }
                 }
-                String eid = res.get(Keys.id.name());
-                String ereg = res.get(Keys.region.name());
-                MonkeyType monkeyType = valueToEnum(MonkeyType.class, res.get(Keys.monkeyType.name()));
-                EventType eventType = valueToEnum(EventType.class, res.get(Keys.eventType.name()));
-                long eventTime = Long.parseLong(res.get(Keys.eventTime.name()));
-                list.add(new BasicRecorderEvent(monkeyType, eventType, ereg, eid, eventTime).addFields(fields));
             }
         } while (result.getNextToken() != null);
-        return list;
+        return count;
+    }
+
+    /**
+     * Appends the conditions of a query to a select expression.
+     */
+    private void appendConditions(StringBuilder query, Map<String, String> queryMap, long after) {
+        if (queryMap.containsKey(Keys.region.name())) {
+            query.append(String.format("region = '%s'", queryMap.get(Keys.region.name())));
+        } else {
+            query.append(String.format("region = '%s'", region));
+        }
+        for (Map.Entry<String, String> pair : queryMap.entrySet()) {
+            if (Keys.region.name().equals(pair.getKey())) {
+                continue;
+            }
+            query.append(String.format(" and %s = '%s'", pair.getKey(), pair.getValue()));
+        }
+        query.append(String.format(" and eventTime > '%d'", after));
+    }
+
+    /**
+     * Decodes a SimpleDB item into an event.
+     */
+    private static Event toEvent(Item item) {
+        // the reserved attributes first, they are needed to create the event; the other ones are added to it after
+        String eid = null;
+        String ereg = null;
+        String monkeyType = null;
+        String eventType = null;
+        String eventTime = null;
+        for (Attribute attr : item.getAttributes()) {
+            String name = attr.getName();
+            if (Keys.id.name().equals(name)) {
+                eid = attr.getValue();
+            } else if (Keys.region.name().equals(name)) {
+                ereg = attr.getValue();
+            } else if (Keys.monkeyType.name().equals(name)) {
+                monkeyType = attr.getValue();
+            } else if (Keys.eventType.name().equals(name)) {
+                eventType = attr.getValue();
+            } else if (Keys.eventTime.name().equals(name)) {
+                eventTime = attr.getValue();
+            }
+        }
+        Event evt = new BasicRecorderEvent(valueToEnum(MonkeyType.class, monkeyType),
+                valueToEnum(EventType.class, eventType), ereg, eid, Long.parseLong(eventTime));
+        for (Attribute attr : item.getAttributes()) {
+            if (!Keys.KEYSET.contains(attr.getName())) {
+                evt.addField(attr.getName(), attr.getValue());
+            }
+        }
+        return evt;
     }
 
     /** {@inheritDoc} */
@@ -262,6 +669,27 @@ public class SimpleDBRecorder implements MonkeyRecorder {
         return findEvents(copy, after);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void visitEvents(MonkeyType monkeyType, EventType eventType, Map<String, String> query, Date after,
+            int limit, Order order, EventVisitor visitor) {
+        Map<String, String> copy = new LinkedHashMap<String, String>(query);
+        copy.put(Keys.monkeyType.name(), enumToValue(monkeyType));
+        if (eventType != null) {
+            copy.put(Keys.eventType.name(), enumToValue(eventType));
+        }
+        visitEvents(copy, after.getTime(), limit, order, visitor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int countEvents(MonkeyType monkeyType, EventType eventType, Map<String, String> query, Date after) {
+        Map<String, String> copy = new LinkedHashMap<String, String>(query);
+        copy.put(Keys.monkeyType.name(), enumToValue(monkeyType));
+        copy.put(Keys.eventType.name(), enumToValue(eventType));
+        return countEvents(copy, after.getTime());
+    }
+
     /**
      * Creates the SimpleDB domain, if it does not already exist.
      */
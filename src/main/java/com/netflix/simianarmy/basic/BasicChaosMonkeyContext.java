@@ -26,6 +26,7 @@ import com.netflix.simianarmy.chaos.ChaosEmailNotifier;
 import com.netflix.simianarmy.chaos.ChaosInstanceSelector;
 import com.netflix.simianarmy.chaos.ChaosMonkey;
 import com.netflix.simianarmy.client.aws.chaos.ASGChaosCrawler;
+import com.netflix.simianarmy.client.aws.chaos.MultiRegionASGChaosCrawler;
 
 /**
  * The Class BasicContext. This provide the basic context needed for the Chaos Monkey to run. It will configure
@@ -48,9 +49,19 @@ public class BasicChaosMonkeyContext extends BasicSimianArmyContext implements C
      */
     public BasicChaosMonkeyContext() {
         super("simianarmy.properties", "client.properties", "chaos.properties");
-        setChaosCrawler(new ASGChaosCrawler(awsClient()));
-        setChaosInstanceSelector(new BasicChaosInstanceSelector());
         MonkeyConfiguration cfg = configuration();
+        if (awsClients().size() > 1) {
+            int threads = (int) cfg.getNumOrElse("simianarmy.chaos.crawler.threads", awsClients().size());
+            setChaosCrawler(new MultiRegionASGChaosCrawler(awsClients(), threads));
+        } else {
+            setChaosCrawler(new ASGChaosCrawler(awsClient()));
+        }
+        String seed = cfg.getStr("simianarmy.chaos.selector.seed");
+        if (seed != null) {
+            setChaosInstanceSelector(new BasicChaosInstanceSelector(Long.parseLong(seed.trim())));
+        } else {
+            setChaosInstanceSelector(new BasicChaosInstanceSelector());
+        }
         setChaosEmailNotifier(new BasicChaosEmailNotifier(cfg, new AmazonSimpleEmailServiceClient(), null));
     }
 
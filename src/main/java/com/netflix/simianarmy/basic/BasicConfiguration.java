@@ -47,7 +47,7 @@ public class BasicConfiguration implements MonkeyConfiguration {
     /** {@inheritDoc} */
     @Override
     public boolean getBoolOrElse(String property, boolean dflt) {
-        String val = props.getProperty(property);
+        String val = getProperty(property);
         if (val == null) {
             return dflt;
         }
@@ -58,7 +58,7 @@ public class BasicConfiguration implements MonkeyConfiguration {
     /** {@inheritDoc} */
     @Override
     public double getNumOrElse(String property, double dflt) {
-        String val = props.getProperty(property);
+        String val = getProperty(property);
         return val == null ? dflt : Double.parseDouble(val);
     }
 
@@ -71,10 +71,21 @@ public class BasicConfiguration implements MonkeyConfiguration {
     /** {@inheritDoc} */
     @Override
     public String getStrOrElse(String property, String dflt) {
-        String val = props.getProperty(property);
+        String val = getProperty(property);
         return val == null ? dflt : val;
     }
 
+    /**
+     * Looks up the raw value of a property.
+     *
+     * @param property
+     *            the property name
+     * @return the value, or null if the property is not set
+     */
+    protected String getProperty(String property) {
+        return props.getProperty(property);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void reload() {
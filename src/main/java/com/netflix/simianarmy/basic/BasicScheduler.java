@@ -17,6 +17,7 @@
  */
 package com.netflix.simianarmy.basic;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
@@ -30,7 +31,9 @@ import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.netflix.simianarmy.AbstractMonkeyRecorder;
 import com.netflix.simianarmy.Monkey;
+import com.netflix.simianarmy.MonkeyRecorder;
 import com.netflix.simianarmy.MonkeyRecorder.Event;
 import com.netflix.simianarmy.MonkeyScheduler;
 
@@ -99,8 +102,17 @@ public class BasicScheduler implements MonkeyScheduler {
         cal.add(Calendar.MILLISECOND, (int) (-1 * cycle));
 
         Date then = cal.getTime();
-        List<Event> events = monkey.context().recorder()
-                .findEvents(monkey.type(), Collections.<String, String>emptyMap(), then);
+        // only the most recent event matters
+        final List<Event> events = new ArrayList<Event>(1);
+        AbstractMonkeyRecorder.visitEvents(monkey.context().recorder(), monkey.type(), null,
+                Collections.<String, String>emptyMap(), then, 1, MonkeyRecorder.Order.NEWEST_FIRST,
+                new MonkeyRecorder.EventVisitor() {
+                    @Override
+                    public boolean visit(Event evt) {
+                        events.add(evt);
+                        return false;
+                    }
+                });
         if (events.isEmpty()) {
             // no events so just run now
             futures.put(monkey.type().name(),
@@ -17,17 +17,27 @@
  */
 package com.netflix.simianarmy.basic;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
-import java.util.LinkedList;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 
@@ -41,11 +51,13 @@ import com.netflix.simianarmy.MonkeyScheduler;
 import com.netflix.simianarmy.aws.SimpleDBRecorder;
 import com.netflix.simianarmy.aws.STSAssumeRoleSessionCredentialsProvider;
 import com.netflix.simianarmy.client.aws.AWSClient;
+import com.netflix.simianarmy.client.aws.AwsRateLimiter;
+import com.netflix.simianarmy.client.aws.AwsRateLimiters;
 
 /**
  * The Class BasicSimianArmyContext.
  */
-public class BasicSimianArmyContext implements Monkey.Context {
+public class BasicSimianArmyContext implements Monkey.Context, Closeable {
 
     /** The Constant LOGGER. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BasicSimianArmyContext.class);
@@ -53,9 +65,15 @@ public class BasicSimianArmyContext implements Monkey.Context {
     /** The configuration properties. */
     private final Properties properties = new Properties();
 
+    /** The configuration files the properties were loaded from, in order. */
+    private final List<URL> configUrls = new ArrayList<URL>();
+
     /** The Constant MONKEY_THREADS. */
     private static final int MONKEY_THREADS = 1;
 
+    /** The default number of events waiting for the asynchronous SimpleDB writer. */
+    private static final int SDB_QUEUE_SIZE = 1000;
+
     /** The scheduler. */
     private MonkeyScheduler scheduler;
 
@@ -68,15 +86,24 @@ public class BasicSimianArmyContext implements Monkey.Context {
     /** The client. */
     private AWSClient client;
 
+    /** The clients of the additional regions, keyed by region. */
+    private final Map<String, AWSClient> regionalClients = new LinkedHashMap<String, AWSClient>();
+
     /** The recorder. */
     private MonkeyRecorder recorder;
 
-    /** The reported events. */
-    private final LinkedList<Event> eventReport;
+    /** The events of the current run, reported from all the threads of the monkey. */
+    private final Queue<Event> eventReport;
 
     /** The AWS credentials provider to be used. */
     private AWSCredentialsProvider awsCredentialsProvider = new DefaultAWSCredentialsProviderChain();
 
+    /** The configuration of the connection pools shared by the AWS SDK clients. */
+    private final ClientConfiguration awsClientConfig;
+
+    /** The rate limiters of the AWS services shared by the AWS clients, null if the rate is not limited. */
+    private final AwsRateLimiters awsRateLimiters;
+
     /** If configured, the ARN of Role to be assumed. */
     private final String assumeRoleArn;
 
@@ -86,9 +113,12 @@ public class BasicSimianArmyContext implements Monkey.Context {
 
     private final String region;
 
+    /** The regions to operate in, the default region first. */
+    private final List<String> regions;
+
     /** protected constructor as the Shell is meant to be subclassed. */
     protected BasicSimianArmyContext(String... configFiles) {
-        eventReport = new LinkedList<Event>();
+        eventReport = new ConcurrentLinkedQueue<Event>();
         // Load the config files into props following the provided order.
         for (String configFile : configFiles) {
             loadConfigurationFileIntoProperties(configFile);
@@ -98,12 +128,15 @@ public class BasicSimianArmyContext implements Monkey.Context {
             LOGGER.info(String.format("%s = %s", prop.getKey(), prop.getValue()));
         }
 
-        config = new BasicConfiguration(properties);
+        config = createConfiguration();
         calendar = new BasicCalendar(config);
 
         account = config.getStr("simianarmy.client.aws.accountKey");
         secret = config.getStr("simianarmy.client.aws.secretKey");
         region = config.getStrOrElse("simianarmy.client.aws.region", "us-east-1");
+        regions = parseRegions(config.getStr("simianarmy.client.aws.regions"));
+        awsClientConfig = createAwsClientConfig();
+        awsRateLimiters = AwsRateLimiters.fromConfig(config);
 
         assumeRoleArn = config.getStr("simianarmy.client.aws.assumeRoleArn");
         if (assumeRoleArn != null) {
@@ -117,6 +150,8 @@ public class BasicSimianArmyContext implements Monkey.Context {
 
         createClient();
 
+        createRegionalClients();
+
         createScheduler();
 
         createRecorder();
@@ -127,12 +162,14 @@ public class BasicSimianArmyContext implements Monkey.Context {
     protected void loadConfigurationFileIntoProperties(String propertyFileName) {
         String propFile = System.getProperty(propertyFileName, "/" + propertyFileName);
         try {
-            InputStream is = BasicSimianArmyContext.class.getResourceAsStream(propFile);
+            URL url = BasicSimianArmyContext.class.getResource(propFile);
+            InputStream is = url.openStream();
             try {
                 properties.load(is);
             } finally {
                 is.close();
             }
+            configUrls.add(url);
         } catch (Exception e) {
             String msg = "Unable to load properties file " + propFile + " set System property \"" + propertyFileName
                     + "\" to valid file";
@@ -141,6 +178,39 @@ public class BasicSimianArmyContext implements Monkey.Context {
         }
     }
 
+    /**
+     * Creates the configuration. When simianarmy.config.watch is set, the configuration files are watched and
+     * changes to them are picked up without a restart.
+     */
+    private BasicConfiguration createConfiguration() {
+        if (!Boolean.parseBoolean(properties.getProperty("simianarmy.config.watch", "false").trim())) {
+            return new BasicConfiguration(properties);
+        }
+        try {
+            return new FileWatchingConfiguration(configUrls);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to watch the configuration files, changes need a restart", e);
+            return new BasicConfiguration(properties);
+        }
+    }
+
+    /**
+     * Creates the configuration of the AWS SDK clients from the simianarmy.client.aws.* properties.
+     */
+    private ClientConfiguration createAwsClientConfig() {
+        ClientConfiguration clientConfig = new ClientConfiguration();
+        clientConfig.setMaxConnections((int) config.getNumOrElse("simianarmy.client.aws.maxConnections",
+                ClientConfiguration.DEFAULT_MAX_CONNECTIONS));
+        clientConfig.setSocketTimeout((int) config.getNumOrElse("simianarmy.client.aws.socketTimeout",
+                ClientConfiguration.DEFAULT_SOCKET_TIMEOUT));
+        clientConfig.setConnectionTimeout((int) config.getNumOrElse("simianarmy.client.aws.connectionTimeout",
+                ClientConfiguration.DEFAULT_CONNECTION_TIMEOUT));
+        // the reaper closes pooled connections that have been idle for too long
+        clientConfig.setUseReaper(config.getBoolOrElse("simianarmy.client.aws.useReaper",
+                ClientConfiguration.DEFAULT_USE_REAPER));
+        return clientConfig;
+    }
+
     private void createScheduler() {
         int freq = (int) config.getNumOrElse("simianarmy.scheduler.frequency", 1);
         TimeUnit freqUnit = TimeUnit.valueOf(config.getStrOrElse("simianarmy.scheduler.frequencyUnit", "HOURS"));
@@ -157,6 +227,10 @@ public class BasicSimianArmyContext implements Monkey.Context {
             if (client != null) {
                 SimpleDBRecorder simpleDbRecorder = new SimpleDBRecorder(client, domain);
                 simpleDbRecorder.init();
+                if (config.getBoolOrElse("simianarmy.recorder.sdb.async", false)) {
+                    simpleDbRecorder.startAsyncWriter(
+                            (int) config.getNumOrElse("simianarmy.recorder.sdb.queueSize", SDB_QUEUE_SIZE));
+                }
                 setRecorder(simpleDbRecorder);
             }
         } else {
@@ -177,10 +251,38 @@ public class BasicSimianArmyContext implements Monkey.Context {
      * @param clientRegion
      */
     protected void createClient(String clientRegion) {
-        this.client = new AWSClient(clientRegion, awsCredentialsProvider);
+        this.client = new AWSClient(clientRegion, awsCredentialsProvider, awsClientConfig, awsRateLimiters);
         setCloudClient(this.client);
     }
 
+    /**
+     * Parses the comma separated list of regions, making sure the default region comes first.
+     */
+    private List<String> parseRegions(String regionList) {
+        List<String> list = new ArrayList<String>();
+        list.add(region);
+        for (String r : StringUtils.split(StringUtils.defaultString(regionList), ", ")) {
+            if (!list.contains(r)) {
+                list.add(r);
+            }
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Creates a client for each of the configured regions that is not already served by the default client.
+     */
+    private void createRegionalClients() {
+        if (client == null) {
+            return;
+        }
+        for (String r : regions) {
+            if (!r.equals(client.region())) {
+                regionalClients.put(r, new AWSClient(r, awsCredentialsProvider, awsClientConfig, awsRateLimiters));
+            }
+        }
+    }
+
     /**
      * Gets the AWS client.
      * @return the AWS client
@@ -189,6 +291,31 @@ public class BasicSimianArmyContext implements Monkey.Context {
         return client;
     }
 
+    /**
+     * Gets the AWS client for the given region, falling back to the default client for regions that are not
+     * listed in simianarmy.client.aws.regions.
+     * @param clientRegion
+     *            the region
+     * @return the AWS client for the region
+     */
+    public AWSClient awsClient(String clientRegion) {
+        AWSClient regionalClient = regionalClients.get(clientRegion);
+        return regionalClient == null ? client : regionalClient;
+    }
+
+    /**
+     * Gets the AWS clients of all the configured regions, the default client first.
+     * @return the AWS clients
+     */
+    public List<AWSClient> awsClients() {
+        List<AWSClient> clients = new ArrayList<AWSClient>();
+        if (client != null) {
+            clients.add(client);
+        }
+        clients.addAll(regionalClients.values());
+        return clients;
+    }
+
     /**
      * Gets the region.
      * @return the region
@@ -197,6 +324,15 @@ public class BasicSimianArmyContext implements Monkey.Context {
         return region;
     }
 
+    /**
+     * Gets the regions to operate in, taken from simianarmy.client.aws.regions. The default region is always
+     * included and comes first.
+     * @return the regions
+     */
+    public List<String> regions() {
+        return regions;
+    }
+
     @Override
     public void reportEvent(Event evt) {
         this.eventReport.add(evt);
@@ -325,6 +461,47 @@ public class BasicSimianArmyContext implements Monkey.Context {
         return this.properties;
     }
 
+    /**
+     * Gets the configuration shared by the AWS SDK clients.
+     * @return the AWS client configuration
+     */
+    public ClientConfiguration getAwsClientConfig() {
+        return awsClientConfig;
+    }
+
+    /**
+     * Gets the rate limiters of the AWS services shared by the AWS clients.
+     * @return the rate limiters, null if the rate of the AWS calls is not limited
+     */
+    public AwsRateLimiters getAwsRateLimiters() {
+        return awsRateLimiters;
+    }
+
+    /**
+     * Closes the recorder, if it holds resources, and shuts down the AWS clients of all the regions.
+     * The clients can still be used afterwards, they reconnect on demand.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (recorder instanceof Closeable) {
+                ((Closeable) recorder).close();
+            }
+        } finally {
+            for (AWSClient awsClient : awsClients()) {
+                awsClient.shutdown();
+            }
+            if (awsRateLimiters != null) {
+                for (AwsRateLimiter limiter : awsRateLimiters.all()) {
+                    LOGGER.info("AWS rate limiter " + limiter);
+                }
+            }
+            if (config instanceof Closeable) {
+                ((Closeable) config).close();
+            }
+        }
+    }
+
     /**
      * Gets the AWS credentials provider.
      * @return the AWS credentials provider
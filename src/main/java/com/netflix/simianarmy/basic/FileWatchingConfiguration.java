@@ -0,0 +1,221 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.basic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A configuration read from a list of property files, later files overriding earlier ones, that picks up changes to
+ * the files without a restart. The files that are on the file system are watched from a background thread, which
+ * parses them again whenever one changes and swaps the new properties in as a whole; lookups read the current
+ * snapshot without locking. Files inside jars cannot change and are read once.
+ *
+ * Since the snapshot is always current, {@link #reload()} has nothing to do.
+ */
+public class FileWatchingConfiguration extends BasicConfiguration implements Closeable {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileWatchingConfiguration.class);
+
+    /** The property files, in the order they are applied. */
+    private final List<URL> sources;
+
+    /** The current properties. */
+    private volatile Map<String, String> snapshot;
+
+    /** The watch service, null if none of the files can be watched. */
+    private final WatchService watchService;
+
+    /**
+     * Instantiates a new file watching configuration, reading the files once and starting to watch them.
+     *
+     * @param sources
+     *            the property files, in the order they are applied
+     * @throws IOException
+     *             if the files cannot be read or watched
+     */
+    public FileWatchingConfiguration(List<URL> sources) throws IOException {
+        super(new Properties());
+        this.sources = new ArrayList<URL>(sources);
+        this.snapshot = load();
+
+        Set<Path> files = new HashSet<Path>();
+        for (URL source : this.sources) {
+            Path file = toPath(source);
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            watchService = null;
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> dirs = new HashSet<Path>();
+        for (Path file : files) {
+            if (dirs.add(file.getParent())) {
+                file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+        Thread watcher = new Thread(new Watcher(files), "FileWatchingConfiguration-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        LOGGER.info("Watching the configuration files {}", files);
+    }
+
+    /**
+     * Gets the properties currently in effect.
+     *
+     * @return an immutable snapshot of the properties
+     */
+    public Map<String, String> snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    protected String getProperty(String property) {
+        return snapshot.get(property);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reload() {
+        // the watcher keeps the snapshot current
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reload(String groupName) {
+        // the watcher keeps the snapshot current
+    }
+
+    /**
+     * Stops watching the files.
+     */
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Reads all the files into a new snapshot.
+     */
+    private Map<String, String> load() throws IOException {
+        Properties props = new Properties();
+        for (URL source : sources) {
+            InputStream is = source.openStream();
+            try {
+                props.load(is);
+            } finally {
+                is.close();
+            }
+        }
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (String name : props.stringPropertyNames()) {
+            builder.put(name, props.getProperty(name));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the file of a property file URL, or null if it is not a file on the file system.
+     */
+    private static Path toPath(URL source) {
+        if (!"file".equals(source.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(source.toURI()).toAbsolutePath();
+        } catch (URISyntaxException e) {
+            LOGGER.warn("Not watching the configuration file " + source, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reloads the snapshot whenever one of the files changes.
+     */
+    private class Watcher implements Runnable {
+        private final Set<Path> files;
+
+        Watcher(Set<Path> files) {
+            this.files = files;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || files.contains(dir.resolve((Path) event.context()))) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    if (changed) {
+                        reloadSnapshot();
+                    }
+                }
+            } catch (ClosedWatchServiceException e) {
+                LOGGER.info("Stopped watching the configuration files");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void reloadSnapshot() {
+            try {
+                snapshot = load();
+                LOGGER.info("Reloaded the configuration, {} properties", snapshot.size());
+            } catch (Exception e) {
+                // a file may be caught half written; keep the last good snapshot until the next change
+                LOGGER.warn("Failed to reload the configuration, keeping the previous properties", e);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.netflix.simianarmy.basic;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
@@ -27,13 +28,23 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.mapdb.Atomic;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.Fun;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.netflix.simianarmy.AbstractMonkeyRecorder;
 import com.netflix.simianarmy.EventType;
 import com.netflix.simianarmy.MonkeyConfiguration;
 import com.netflix.simianarmy.MonkeyRecorder;
@@ -43,23 +54,66 @@ import com.netflix.simianarmy.chaos.ChaosMonkey;
 /**
  * Replacement for SimpleDB on non-AWS: use an embedded db.
  *
+ * Besides the events, keyed by (time, id), the db holds a secondary index of (index key, time, id) tuples so that
+ * queries on the monkey type, the event type and an event field or the region are range scans of the index instead
+ * of full scans of the events. The index keys of an event are its monkey type, its monkey type and event type, and
+ * its monkey type, event type and each one of its id, region and fields. Events with a region and a groupType field
+ * are also indexed on their monkey type, event type, region, group type and each one of their other fields, so that
+ * counting the events of a group in a region, such as the terminations the chaos monkey checks its limits against,
+ * only reads the index.
+ *
+ * By default every event is committed to disk as soon as it is recorded. With
+ * simianarmy.recorder.localdb.group_commit enabled, events are queued in memory and committed in batches by a
+ * background thread, either when commit_batch_size events are pending or every commit_interval_ms milliseconds,
+ * and the old events are trimmed in the same pass. Pending events are committed before any query and when the
+ * recorder is closed; events still pending when the process dies are lost.
+ *
  * @author jgardner
  *
  */
-public class LocalDbRecorder implements MonkeyRecorder {
+public class LocalDbRecorder extends AbstractMonkeyRecorder implements Closeable {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalDbRecorder.class);
 
     private static DB db = null;
     private static Atomic.Long nextId = null;
+    private static Atomic.Long eventCount = null;
     private static ConcurrentNavigableMap<Fun.Tuple2<Long, Long>, Event> eventMap = null;
+    private static NavigableSet<Fun.Tuple3<String, Long, Long>> eventIndex = null;
+
+    /** The version of the index keys, the index of a db written with other keys is rebuilt. */
+    private static final long INDEX_VERSION = 2;
 
     // Upper bound, so we don't fill the disk with monkey events
-    private static final double MAX_EVENTS = 10000;
+    private static final double MAX_EVENTS = 1000000;
     private double maxEvents = MAX_EVENTS;
 
+    private static final double COMMIT_BATCH_SIZE = 100;
+    private static final double COMMIT_INTERVAL_MS = 1000;
+
     private String dbFilename = "simianarmy_events";
 
     private String dbpassword = null;
 
+    /** The events waiting for the next group commit, null if every event is committed as it is recorded. */
+    private volatile BlockingQueue<Event> pending = null;
+    private int commitBatchSize = (int) COMMIT_BATCH_SIZE;
+    private volatile ScheduledExecutorService committer = null;
+
+    /** Commits the pending events. */
+    private final Runnable commitTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (Exception e) {
+                // keep the events queued for the next pass rather than killing the scheduled task
+                LOGGER.error("Failed to commit the pending events", e);
+            }
+        }
+    };
+
     /** Constructor.
      *
      */
@@ -68,27 +122,64 @@ public class LocalDbRecorder implements MonkeyRecorder {
             dbFilename = configuration.getStrOrElse("simianarmy.recorder.localdb.file", null);
             maxEvents = configuration.getNumOrElse("simianarmy.recorder.localdb.max_events", MAX_EVENTS);
             dbpassword = configuration.getStrOrElse("simianarmy.recorder.localdb.password", null);
+            if (configuration.getBoolOrElse("simianarmy.recorder.localdb.group_commit", false)) {
+                commitBatchSize = (int) configuration.getNumOrElse(
+                        "simianarmy.recorder.localdb.commit_batch_size", COMMIT_BATCH_SIZE);
+                long interval = (long) configuration.getNumOrElse(
+                        "simianarmy.recorder.localdb.commit_interval_ms", COMMIT_INTERVAL_MS);
+                startGroupCommit(interval);
+            }
         }
     }
 
-    private synchronized void init() {
-        if (nextId != null) {
-            return;
+    private void startGroupCommit(long intervalMs) {
+        pending = new LinkedBlockingQueue<Event>();
+        committer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "LocalDbRecorder-committer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        committer.scheduleWithFixedDelay(commitTask, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void init() {
+        // the db is shared by all the recorders, and the committer threads may get here first
+        synchronized (LocalDbRecorder.class) {
+            if (nextId != null) {
+                return;
+            }
+            File dbFile = null;
+            dbFile = (dbFilename == null) ? tempDbFile() : new File(dbFilename);
+            if (dbpassword != null) {
+                db = DBMaker.newFileDB(dbFile)
+                        .closeOnJvmShutdown()
+                        .encryptionEnable(dbpassword)
+                        .make();
+            } else {
+                db = DBMaker.newFileDB(dbFile)
+                        .closeOnJvmShutdown()
+                        .make();
+            }
+            eventMap = db.getTreeMap("eventMap");
+            eventIndex = db.getTreeSet("eventIndex");
+            // the db file may have been written by an earlier run
+            nextId = db.exists("next") ? db.getAtomicLong("next") : db.createAtomicLong("next", 1);
+            eventCount = db.getAtomicLong("eventCount");
+            Atomic.Long indexVersion = db.getAtomicLong("indexVersion");
+            if (indexVersion.get() != INDEX_VERSION) {
+                // a db written before the index existed, or with other index keys
+                eventIndex.clear();
+                for (Map.Entry<Fun.Tuple2<Long, Long>, Event> entry : eventMap.entrySet()) {
+                    index(entry.getValue(), entry.getKey());
+                }
+                eventCount.set(eventMap.size());
+                indexVersion.set(INDEX_VERSION);
+                db.commit();
+            }
         }
-        File dbFile = null;
-        dbFile = (dbFilename == null) ? tempDbFile() : new File(dbFilename);
-        if (dbpassword != null) {
-            db = DBMaker.newFileDB(dbFile)
-                    .closeOnJvmShutdown()
-                    .encryptionEnable(dbpassword)
-                    .make();
-        } else {
-            db = DBMaker.newFileDB(dbFile)
-                    .closeOnJvmShutdown()
-                    .make();
-        }
-        eventMap = db.getTreeMap("eventMap");
-        nextId = db.createAtomicLong("next", 1);
     }
 
     private static File tempDbFile() {
@@ -117,13 +208,79 @@ public class LocalDbRecorder implements MonkeyRecorder {
     @Override
     public void recordEvent(Event evt) {
         init();
-        Fun.Tuple2<Long, Long> id = Fun.t2(evt.eventTime().getTime(),
-                nextId.incrementAndGet());
+        BlockingQueue<Event> queue = pending;
+        if (queue == null) {
+            write(Collections.singletonList(evt), maxEvents);
+            return;
+        }
+        queue.add(evt);
+        if (pending != queue) {
+            // closed in the meantime, and the flush of the close may have run before the event was added
+            flush(queue);
+            return;
+        }
+        ScheduledExecutorService executor = committer;
+        if (queue.size() >= commitBatchSize && executor != null && !executor.isShutdown()) {
+            executor.execute(commitTask);
+        }
+    }
+
+    /**
+     * Commits the events that are waiting for the next group commit, if any.
+     */
+    public void flush() {
+        flush(pending);
+    }
+
+    private void flush(BlockingQueue<Event> queue) {
+        if (queue == null || queue.isEmpty()) {
+            return;
+        }
+        init();
+        List<Event> batch = new ArrayList<Event>(queue.size());
+        // the committer thread and the readers may flush at the same time; keep the batches in order
+        synchronized (queue) {
+            queue.drainTo(batch);
+            if (!batch.isEmpty()) {
+                write(batch, maxEvents);
+            }
+        }
+    }
 
-        if (eventMap.size() + 1 > maxEvents) {
-            eventMap.remove(eventMap.firstKey());
+    /**
+     * Commits the pending events and stops the background commits. Events recorded afterwards are committed as
+     * they are recorded.
+     */
+    @Override
+    public synchronized void close() {
+        if (committer != null) {
+            BlockingQueue<Event> queue = pending;
+            pending = null;
+            committer.shutdownNow();
+            committer = null;
+            flush(queue);
+        }
+    }
+
+    /**
+     * Writes and commits a batch of events, trimming the oldest events beyond the cap.
+     */
+    private static synchronized void write(List<Event> evts, double maxEvents) {
+        for (Event evt : evts) {
+            Fun.Tuple2<Long, Long> id = Fun.t2(evt.eventTime().getTime(), nextId.incrementAndGet());
+            eventMap.put(id, evt);
+            index(evt, id);
+            eventCount.incrementAndGet();
+        }
+        // the map size is not tracked by the map itself and would cost a full scan, so keep our own count
+        while (eventCount.get() > maxEvents) {
+            Map.Entry<Fun.Tuple2<Long, Long>, Event> oldest = eventMap.pollFirstEntry();
+            if (oldest == null) {
+                break;
+            }
+            unindex(oldest.getValue(), oldest.getKey());
+            eventCount.decrementAndGet();
         }
-        eventMap.put(id, evt);
         db.commit();
     }
 
@@ -132,26 +289,57 @@ public class LocalDbRecorder implements MonkeyRecorder {
      */
     @Override
     public List<Event> findEvents(Map<String, String> query, Date after) {
+        final List<Event> foundEvents = new ArrayList<Event>();
+        visitEvents(query, after, 0, Order.OLDEST_FIRST, new EventVisitor() {
+            @Override
+            public boolean visit(Event evt) {
+                foundEvents.add(evt);
+                return true;
+            }
+        });
+        return foundEvents;
+    }
+
+    /**
+     * Visits the events matching a query, scanning the index range of the query, or all the events after the given
+     * time if the query has no index key, in the given order.
+     */
+    private void visitEvents(Map<String, String> query, Date after, int limit, Order order, EventVisitor visitor) {
         init();
-        List<Event> foundEvents = new ArrayList<Event>();
-        for (Event evt : eventMap.tailMap(toKey(after)).values()) {
-            boolean matched = true;
-            for (Map.Entry<String, String> pair : query.entrySet()) {
-                if (pair.getKey().equals("id") && !evt.id().equals(pair.getValue())) {
-                    matched = false;
-                }
-                if (pair.getKey().equals("monkeyType") && !evt.monkeyType().toString().equals(pair.getValue())) {
-                    matched = false;
-                }
-                if (pair.getKey().equals("eventType") && !evt.eventType().toString().equals(pair.getValue())) {
-                    matched = false;
+        flush();
+        int visited = 0;
+        String indexKey = indexKey(query);
+        if (indexKey == null) {
+            ConcurrentNavigableMap<Fun.Tuple2<Long, Long>, Event> range = eventMap.tailMap(toKey(after));
+            if (order == Order.NEWEST_FIRST) {
+                range = range.descendingMap();
+            }
+            for (Event evt : range.values()) {
+                if (matches(evt, query)) {
+                    visited++;
+                    if (!visitor.visit(evt) || visited == limit) {
+                        return;
+                    }
                 }
             }
-            if (matched) {
-                foundEvents.add(evt);
+            return;
+        }
+        NavigableSet<Fun.Tuple3<String, Long, Long>> range = eventIndex.subSet(
+                Fun.t3(indexKey, after.getTime(), 0L), true,
+                Fun.t3(indexKey, Long.MAX_VALUE, Long.MAX_VALUE), true);
+        if (order == Order.NEWEST_FIRST) {
+            range = range.descendingSet();
+        }
+        for (Fun.Tuple3<String, Long, Long> entry : range) {
+            Event evt = getEvent(Fun.t2(entry.b, entry.c));
+            // the event may have been trimmed since the index was read
+            if (evt != null && matches(evt, query)) {
+                visited++;
+                if (!visitor.visit(evt) || visited == limit) {
+                    return;
+                }
             }
         }
-        return foundEvents;
     }
 
     /* (non-Javadoc)
@@ -177,10 +365,195 @@ public class LocalDbRecorder implements MonkeyRecorder {
         return findEvents(copy, after);
     }
 
+    /* (non-Javadoc)
+     * @see com.netflix.simianarmy.AbstractMonkeyRecorder#visitEvents(MonkeyType, EventType, Map, Date, int, Order,
+     * EventVisitor)
+     */
+    @Override
+    public void visitEvents(MonkeyType monkeyType, EventType eventType, Map<String, String> query, Date after,
+            int limit, Order order, EventVisitor visitor) {
+        Map<String, String> copy = new LinkedHashMap<String, String>(query);
+        copy.put("monkeyType", monkeyType.name());
+        if (eventType != null) {
+            copy.put("eventType", eventType.name());
+        }
+        visitEvents(copy, after, limit, order, visitor);
+    }
+
+    /* (non-Javadoc)
+     * @see com.netflix.simianarmy.AbstractMonkeyRecorder#countEvents(MonkeyType, EventType, Map, Date)
+     */
+    @Override
+    public int countEvents(MonkeyType monkeyType, EventType eventType, Map<String, String> query, Date after) {
+        Map<String, String> copy = new LinkedHashMap<String, String>(query);
+        copy.put("monkeyType", monkeyType.name());
+        copy.put("eventType", eventType.name());
+        String indexKey = coveringIndexKey(copy);
+        if (indexKey == null) {
+            // some filters are not part of the index key and need the events
+            final int[] count = new int[1];
+            visitEvents(copy, after, 0, Order.OLDEST_FIRST, new EventVisitor() {
+                @Override
+                public boolean visit(Event evt) {
+                    count[0]++;
+                    return true;
+                }
+            });
+            return count[0];
+        }
+        init();
+        flush();
+        // every entry of the range matches, so only the index is read
+        return eventIndex.subSet(
+                Fun.t3(indexKey, after.getTime(), 0L), true,
+                Fun.t3(indexKey, Long.MAX_VALUE, Long.MAX_VALUE), true).size();
+    }
+
+    /**
+     * Reads an event. Abstracted to aid testing.
+     *
+     * @param id
+     *            the (time, id) key of the event
+     * @return the event, null if it has been trimmed
+     */
+    protected Event getEvent(Fun.Tuple2<Long, Long> id) {
+        return eventMap.get(id);
+    }
+
     private Fun.Tuple2<Long, Long> toKey(Date date) {
         return Fun.t2(date.getTime(), 0L);
     }
 
+    /**
+     * Checks an event against all the filters of a query. The id, monkeyType, eventType and region keys are
+     * matched against the event attributes, any other key against the event field of the same name.
+     */
+    private static boolean matches(Event evt, Map<String, String> query) {
+        for (Map.Entry<String, String> pair : query.entrySet()) {
+            String key = pair.getKey();
+            String value;
+            if (key.equals("id")) {
+                value = evt.id();
+            } else if (key.equals("monkeyType")) {
+                value = evt.monkeyType().toString();
+            } else if (key.equals("eventType")) {
+                value = evt.eventType().toString();
+            } else if (key.equals("region")) {
+                value = evt.region();
+            } else {
+                value = evt.field(key);
+            }
+            if (value == null || !value.equals(pair.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks the most selective index key a query can be answered from, or null if the query has no monkey type
+     * and needs a full scan. The id and the fields are preferred to the region, which is shared by most events, and
+     * a field of a group in a region to the field alone.
+     */
+    private static String indexKey(Map<String, String> query) {
+        String monkeyType = query.get("monkeyType");
+        if (monkeyType == null) {
+            return null;
+        }
+        String eventType = query.get("eventType");
+        if (eventType == null) {
+            return monkeyType;
+        }
+        String typeKey = monkeyType + "|" + eventType;
+        String region = query.get("region");
+        String groupType = query.get("groupType");
+        String regionKey = null;
+        String fieldKey = null;
+        for (Map.Entry<String, String> pair : query.entrySet()) {
+            String key = pair.getKey();
+            if (key.equals("monkeyType") || key.equals("eventType")) {
+                continue;
+            }
+            if (key.equals("region")) {
+                regionKey = fieldKey(typeKey, key, pair.getValue());
+            } else if (key.equals("id")) {
+                return fieldKey(typeKey, key, pair.getValue());
+            } else if (region != null && groupType != null && !key.equals("groupType")) {
+                return fieldKey(groupKey(typeKey, region, groupType), key, pair.getValue());
+            } else if (fieldKey == null) {
+                fieldKey = fieldKey(typeKey, key, pair.getValue());
+            }
+        }
+        if (fieldKey != null) {
+            return fieldKey;
+        }
+        return regionKey != null ? regionKey : typeKey;
+    }
+
+    /**
+     * Gets the index key of a query whose filters are all part of the key, so that every event of the index range
+     * matches the query, or null if some filters have to be checked against the events.
+     */
+    private static String coveringIndexKey(Map<String, String> query) {
+        if (!query.containsKey("monkeyType") || !query.containsKey("eventType")) {
+            return null;
+        }
+        int filters = query.size() - 2;
+        boolean groupField = filters == 3 && query.containsKey("region") && query.containsKey("groupType")
+                && !query.containsKey("id");
+        return filters <= 1 || groupField ? indexKey(query) : null;
+    }
+
+    /** Gets the index keys of an event, see the class comment. */
+    private static List<String> indexKeys(Event evt) {
+        String monkeyType = evt.monkeyType().toString();
+        String typeKey = monkeyType + "|" + evt.eventType().toString();
+        List<String> keys = new ArrayList<String>(2 * evt.fields().size() + 4);
+        keys.add(monkeyType);
+        keys.add(typeKey);
+        if (evt.id() != null) {
+            keys.add(fieldKey(typeKey, "id", evt.id()));
+        }
+        if (evt.region() != null) {
+            keys.add(fieldKey(typeKey, "region", evt.region()));
+        }
+        for (Map.Entry<String, String> field : evt.fields().entrySet()) {
+            if (field.getValue() != null) {
+                keys.add(fieldKey(typeKey, field.getKey(), field.getValue()));
+            }
+        }
+        String groupType = evt.field("groupType");
+        if (evt.region() != null && groupType != null) {
+            String groupKey = groupKey(typeKey, evt.region(), groupType);
+            for (Map.Entry<String, String> field : evt.fields().entrySet()) {
+                if (field.getValue() != null && !field.getKey().equals("groupType")) {
+                    keys.add(fieldKey(groupKey, field.getKey(), field.getValue()));
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static String fieldKey(String typeKey, String name, String value) {
+        return typeKey + "|" + name + "=" + value;
+    }
+
+    private static String groupKey(String typeKey, String region, String groupType) {
+        return fieldKey(fieldKey(typeKey, "region", region), "groupType", groupType);
+    }
+
+    private static void index(Event evt, Fun.Tuple2<Long, Long> id) {
+        for (String key : indexKeys(evt)) {
+            eventIndex.add(Fun.t3(key, id.a, id.b));
+        }
+    }
+
+    private static void unindex(Event evt, Fun.Tuple2<Long, Long> id) {
+        for (String key : indexKeys(evt)) {
+            eventIndex.remove(Fun.t3(key, id.a, id.b));
+        }
+    }
+
     /** Loggable event for LocalDbRecorder.
      *
      */
@@ -17,12 +17,16 @@
  */
 package com.netflix.simianarmy.basic.chaos;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
-import com.google.common.collect.Lists;
 import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,14 +36,39 @@ import com.netflix.simianarmy.chaos.ChaosInstanceSelector;
 
 /**
  * The Class BasicChaosInstanceSelector.
+ *
+ * Instances are picked in a single pass over the instances of the group, without copying or shuffling them, so
+ * selecting from large groups costs no more than walking their instance list once.
  */
 public class BasicChaosInstanceSelector implements ChaosInstanceSelector {
 
     /** The Constant LOGGER. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BasicChaosInstanceSelector.class);
 
-    /** The Constant RANDOM. */
-    private static final Random RANDOM = new Random();
+    /** The seed, null to use the random number generator of the calling thread. */
+    private final Long seed;
+
+    /** The seeded random number generators, one per group so that groups selected on other threads do not matter. */
+    private final ConcurrentMap<String, Random> seeded = new ConcurrentHashMap<String, Random>();
+
+    /**
+     * Instantiates a new selector picking instances at random.
+     */
+    public BasicChaosInstanceSelector() {
+        this.seed = null;
+    }
+
+    /**
+     * Instantiates a new selector picking instances from seeded sequences, so that runs over the same groups pick
+     * the same instances. Every group has its own sequence, derived from the seed and the group, so the picks do
+     * not depend on the order the groups are selected in, even when they are selected on several threads.
+     *
+     * @param seed
+     *            the seed
+     */
+    public BasicChaosInstanceSelector(long seed) {
+        this.seed = seed;
+    }
 
     /**
      * Logger, this is abstracted so subclasses (for testing) can reset logger to make it less verbose.
@@ -49,32 +78,73 @@ public class BasicChaosInstanceSelector implements ChaosInstanceSelector {
         return LOGGER;
     }
 
+    /**
+     * The random number generator used to pick instances of a group.
+     * @param group
+     *            the instance group
+     * @return the random number generator
+     */
+    protected Random random(InstanceGroup group) {
+        if (seed == null) {
+            return ThreadLocalRandom.current();
+        }
+        String key = group.type() + "|" + group.name();
+        Random random = seeded.get(key);
+        if (random == null) {
+            Random newRandom = new Random(seed * 31 + key.hashCode());
+            random = seeded.putIfAbsent(key, newRandom);
+            if (random == null) {
+                random = newRandom;
+            }
+        }
+        return random;
+    }
+
     /** {@inheritDoc} */
     @Override
     public Collection<String> select(InstanceGroup group, double probability) {
         int n = ((int) probability);
         String selected = selectOneInstance(group, probability - n);
-        Collection<String> result = selectNInstances(group.instances(), n, selected);
+        Collection<String> result = selectNInstances(group, n, selected);
         if (selected != null) {
             result.add(selected);
         }
         return result;
     }
 
-    private Collection<String> selectNInstances(Collection<String> instances, int n, String selected) {
+    /**
+     * Picks n of the instances other than the selected one, with selection sampling: each instance is taken with
+     * probability (instances still needed) / (instances not looked at yet), which picks every subset of n instances
+     * with the same probability.
+     */
+    private Collection<String> selectNInstances(InstanceGroup group, int n, String selected) {
+        Collection<String> instances = group.instances();
         logger().info("Randomly selecting {} from {} instances, excluding {}",
                 new Object[] {n, instances.size(), selected});
-        List<String> copy = Lists.newArrayList();
-        for (String instance : instances) {
-            if (!instance.equals(selected)) {
-                copy.add(instance);
+        int remaining = selected == null ? instances.size() : instances.size() - 1;
+        List<String> result = new ArrayList<String>(Math.min(n, remaining) + 1);
+        if (n >= remaining) {
+            for (String instance : instances) {
+                if (!instance.equals(selected)) {
+                    result.add(instance);
+                }
             }
+            return result;
         }
-        if (n >= copy.size()) {
-            return copy;
+        Random random = random(group);
+        int needed = n;
+        for (Iterator<String> it = instances.iterator(); needed > 0 && it.hasNext();) {
+            String instance = it.next();
+            if (instance.equals(selected)) {
+                continue;
+            }
+            if (random.nextInt(remaining) < needed) {
+                result.add(instance);
+                needed--;
+            }
+            remaining--;
         }
-        Collections.shuffle(copy);
-        return copy.subList(0, n);
+        return result;
     }
 
     private String selectOneInstance(InstanceGroup group, double probability) {
@@ -84,12 +154,28 @@ public class BasicChaosInstanceSelector implements ChaosInstanceSelector {
                     new Object[] {group.name(), group.type(), probability});
             return null;
         }
-        double rand = Math.random();
-        if (rand > probability || group.instances().isEmpty()) {
+        Random random = random(group);
+        double rand = random.nextDouble();
+        List<String> instances = group.instances();
+        if (rand > probability || instances.isEmpty()) {
             logger().info("Group {} [type {}] got lucky: {} > {}",
                     new Object[] {group.name(), group.type(), rand, probability});
             return null;
         }
-        return group.instances().get(RANDOM.nextInt(group.instances().size()));
+        return get(instances, random.nextInt(instances.size()));
+    }
+
+    /**
+     * Gets an element of a list, walking it only once if it is not a random access list.
+     */
+    private static String get(List<String> list, int index) {
+        if (list instanceof RandomAccess) {
+            return list.get(index);
+        }
+        Iterator<String> it = list.iterator();
+        for (int i = 0; i < index; i++) {
+            it.next();
+        }
+        return it.next();
     }
 }
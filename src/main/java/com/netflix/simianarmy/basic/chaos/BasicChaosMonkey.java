@@ -17,13 +17,24 @@
  */
 package com.netflix.simianarmy.basic.chaos;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.Validate;
@@ -31,13 +42,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
+import com.netflix.simianarmy.AbstractMonkeyRecorder;
 import com.netflix.simianarmy.CloudClient;
 import com.netflix.simianarmy.FeatureNotEnabledException;
+import com.netflix.simianarmy.GroupType;
 import com.netflix.simianarmy.InstanceGroupNotFoundException;
 import com.netflix.simianarmy.MonkeyCalendar;
 import com.netflix.simianarmy.MonkeyConfiguration;
+import com.netflix.simianarmy.MonkeyRecorder;
 import com.netflix.simianarmy.MonkeyRecorder.Event;
 import com.netflix.simianarmy.NotFoundException;
+import com.netflix.simianarmy.basic.BasicSimianArmyContext;
 import com.netflix.simianarmy.chaos.BlockAllNetworkTrafficChaosType;
 import com.netflix.simianarmy.chaos.BurnIoChaosType;
 import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
@@ -57,6 +72,7 @@ import com.netflix.simianarmy.chaos.FailKeystoneChaosType;
 import com.netflix.simianarmy.chaos.FailNovaChaosType;
 import com.netflix.simianarmy.chaos.FailS3ChaosType;
 import com.netflix.simianarmy.chaos.FillDiskChaosType;
+import com.netflix.simianarmy.chaos.InstanceMetadataCache;
 import com.netflix.simianarmy.chaos.KillProcessesChaosType;
 import com.netflix.simianarmy.chaos.NetworkCorruptionChaosType;
 import com.netflix.simianarmy.chaos.NetworkLatencyChaosType;
@@ -64,6 +80,8 @@ import com.netflix.simianarmy.chaos.NetworkLossChaosType;
 import com.netflix.simianarmy.chaos.NullRouteChaosType;
 import com.netflix.simianarmy.chaos.ShutdownInstanceChaosType;
 import com.netflix.simianarmy.chaos.SshConfig;
+import com.netflix.simianarmy.chaos.SshCredentialProvider;
+import com.netflix.simianarmy.chaos.TerminationIndex;
 
 /**
  * The Class BasicChaosMonkey.
@@ -93,6 +111,34 @@ public class BasicChaosMonkey extends ChaosMonkey {
 
     private final List<ChaosType> allChaosTypes;
 
+    /** The metadata of the instances looked at during the current run, shared by all the chaos types. */
+    private final InstanceMetadataCache metadataCache = new InstanceMetadataCache();
+
+    /** The recorded terminations, loaded once per run to answer the termination counts of all the groups. */
+    private final TerminationIndex terminationIndex;
+
+    /** Whether a run is in progress, the only time the termination index is kept up to date. */
+    private volatile boolean running;
+
+    /** The number of groups evaluated and attacked at the same time, 1 to walk the groups one at a time. */
+    private final int threads;
+
+    /** Caps the number of terminations in flight across all the groups. */
+    private final Semaphore terminationPermits;
+
+    /** The locks serializing the termination count checks and records of the groups counted together. */
+    private final ConcurrentMap<String, Object> accountingLocks = new ConcurrentHashMap<String, Object>();
+
+    /** The SSH credentials of the instances, shared by all the runs. */
+    private final SshCredentialProvider sshCredentials;
+
+    /**
+     * The resolved settings of the groups, by group type and name. Replaced by an empty map whenever the
+     * configuration reloads, so a run that is still going keeps resolving into the map it started with.
+     */
+    private volatile ConcurrentMap<GroupType, ConcurrentMap<String, GroupChaosSettings>> groupSettings =
+            newGroupSettings();
+
     /**
      * Instantiates a new basic chaos monkey.
      * @param ctx
@@ -131,6 +177,13 @@ public class BasicChaosMonkey extends ChaosMonkey {
         allChaosTypes.add(new FailKeystoneChaosType(cfg));
         allChaosTypes.add(new FailGlanceChaosType(cfg));
 
+        terminationIndex = createTerminationIndex(ctx.recorder());
+        sshCredentials = new SshCredentialProvider(cfg);
+
+        threads = Math.max(1, (int) cfg.getNumOrElse(NS + "threads", 1));
+        terminationPermits = new Semaphore(Math.max(1, (int) cfg.getNumOrElse(NS + "maxConcurrentTerminations",
+                threads)));
+
         TimeUnit freqUnit = ctx.scheduler().frequencyUnit();
         if (TimeUnit.DAYS == freqUnit) {
             runsPerDay = ctx.scheduler().frequency();
@@ -145,34 +198,243 @@ public class BasicChaosMonkey extends ChaosMonkey {
     public void doMonkeyBusiness() {
         context().resetEventReport();
         cfg.reload();
+        groupSettings = newGroupSettings();
         if (!isChaosMonkeyEnabled()) {
             return;
         }
-        for (InstanceGroup group : context().chaosCrawler().groups()) {
-            if (isGroupEnabled(group)) {
-                if (isMaxTerminationCountExceeded(group)) {
+        terminationIndex.reset();
+        metadataCache.clear();
+        running = true;
+        try {
+            // Select the victims of all the groups first, so that their metadata can be fetched in bulk.
+            List<InstanceGroup> groups = context().chaosCrawler().groups();
+            List<Collection<String>> selections = forEachGroup(groups, new GroupTask<Collection<String>>() {
+                @Override
+                public Collection<String> run(InstanceGroup group) {
+                    return selectVictims(group);
+                }
+            });
+            final Map<InstanceGroup, Collection<String>> victims =
+                    new LinkedHashMap<InstanceGroup, Collection<String>>();
+            for (int i = 0; i < groups.size(); i++) {
+                if (!selections.get(i).isEmpty()) {
+                    victims.put(groups.get(i), selections.get(i));
+                }
+            }
+            prefetchMetadata(victims);
+            forEachGroup(new ArrayList<InstanceGroup>(victims.keySet()), new GroupTask<Void>() {
+                @Override
+                public Void run(InstanceGroup group) {
+                    attackGroup(group, victims.get(group));
+                    return null;
+                }
+            });
+        } finally {
+            running = false;
+            metadataCache.clear();
+            accountingLocks.clear();
+        }
+    }
+
+    /**
+     * A piece of work done for every instance group of a run.
+     *
+     * @param <T>
+     *            the result type
+     */
+    private interface GroupTask<T> {
+        T run(InstanceGroup group);
+    }
+
+    /**
+     * Runs a task for every group, on up to simianarmy.chaos.threads threads. All the tasks are run even if some
+     * fail; the first failure is then rethrown.
+     *
+     * @return the results, in the order of the groups
+     */
+    private <T> List<T> forEachGroup(List<InstanceGroup> groups, final GroupTask<T> task) {
+        List<T> results = new ArrayList<T>(groups.size());
+        if (threads == 1 || groups.size() <= 1) {
+            for (InstanceGroup group : groups) {
+                results.add(task.run(group));
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, groups.size()));
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>(groups.size());
+            for (final InstanceGroup group : groups) {
+                futures.add(executor.submit(new Callable<T>() {
+                    @Override
+                    public T call() {
+                        return task.run(group);
+                    }
+                }));
+            }
+            RuntimeException failure = null;
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for the instance groups", e);
+                } catch (ExecutionException e) {
+                    results.add(null);
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Selects the instances of a group to attack in this run.
+     *
+     * @return the selected instances, empty if the group is not to be attacked
+     */
+    private Collection<String> selectVictims(InstanceGroup group) {
+        if (!isGroupEnabled(group) || isMaxTerminationCountExceeded(group)) {
+            return Collections.emptyList();
+        }
+        double prob = getEffectiveProbability(group);
+        return context().chaosInstanceSelector().select(group, prob / runsPerDay);
+    }
+
+    /**
+     * Attacks the selected instances of a group. Before every termination the termination count of the group is
+     * checked again and the termination recorded, holding the lock of the group, as groups that are counted
+     * together may have had terminations since they were selected. The rest of the attack runs without the lock.
+     */
+    private void attackGroup(InstanceGroup group, Collection<String> instances) {
+        for (String inst : instances) {
+            // the same instance checks and applies the chaos type, so that they share the SSH session
+            ChaosInstance instance = createChaosInstance(group, inst, metadataCache);
+            try {
+                ChaosType chaosType = pickChaosType(instance);
+                if (chaosType == null) {
+                    // This is surprising ... normally we can always just terminate it
+                    LOGGER.warn("No chaos type was applicable to the instance: {}", inst);
                     continue;
                 }
-                double prob = getEffectiveProbability(group);
-                Collection<String> instances = context().chaosInstanceSelector().select(group, prob / runsPerDay);
-                for (String inst : instances) {
-                    ChaosType chaosType = pickChaosType(context().cloudClient(), inst);
-                    if (chaosType == null) {
-                        // This is surprising ... normally we can always just terminate it
-                        LOGGER.warn("No chaos type was applicable to the instance: {}", inst);
-                        continue;
+                Event evt;
+                synchronized (accountingLock(group)) {
+                    if (isMaxTerminationCountExceeded(group)) {
+                        return;
                     }
-                    terminateInstance(group, inst, chaosType);
+                    evt = recordTerminationUnlessLeashed(group, inst, chaosType);
+                }
+                if (evt == null) {
+                    continue;
+                }
+                terminationPermits.acquireUninterruptibly();
+                try {
+                    applyTermination(group, instance, chaosType, evt);
+                } finally {
+                    terminationPermits.release();
                 }
+            } finally {
+                instance.close();
             }
         }
     }
 
-    private ChaosType pickChaosType(CloudClient cloudClient, String instanceId) {
-        Random random = new Random();
+    private Object accountingLock(InstanceGroup group) {
+        String key = getAccountingKey(group);
+        Object lock = accountingLocks.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = accountingLocks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Gets the key of the termination count of a group. Groups with the same key share their
+     * maxTerminationsPerDay accounting, and check and record their terminations one at a time.
+     *
+     * @param group
+     *            the instance group
+     * @return the accounting key
+     */
+    protected String getAccountingKey(InstanceGroup group) {
+        return group.type().name() + "|" + group.name();
+    }
+
+    /**
+     * Fetches the metadata of all the selected instances with as few calls as possible, one batch per region.
+     * A failure is not fatal: the metadata is then fetched per instance when a chaos type needs it.
+     *
+     * @param victims
+     *            the selected instances, by instance group
+     */
+    private void prefetchMetadata(Map<InstanceGroup, Collection<String>> victims) {
+        Map<String, CloudClient> clients = new HashMap<String, CloudClient>();
+        Map<String, List<String>> instancesByRegion = new LinkedHashMap<String, List<String>>();
+        for (Map.Entry<InstanceGroup, Collection<String>> entry : victims.entrySet()) {
+            String region = entry.getKey().region();
+            if (!clients.containsKey(region)) {
+                clients.put(region, cloudClient(entry.getKey()));
+                instancesByRegion.put(region, new ArrayList<String>());
+            }
+            instancesByRegion.get(region).addAll(entry.getValue());
+        }
+        for (Map.Entry<String, List<String>> entry : instancesByRegion.entrySet()) {
+            try {
+                metadataCache.prefetch(clients.get(entry.getKey()), entry.getValue());
+            } catch (Exception e) {
+                LOGGER.warn("Failed to prefetch the metadata of the instances in region " + entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Creates the index used to count the previous terminations of the instance groups. Override to change how
+     * the recorded terminations are matched to the groups.
+     *
+     * @param recorder
+     *            the recorder holding the termination events
+     * @return the termination index
+     */
+    protected TerminationIndex createTerminationIndex(MonkeyRecorder recorder) {
+        return new TerminationIndex(recorder);
+    }
+
+    /**
+     * Gets the cloud client serving the region of the given instance group. Contexts that operate in several
+     * regions provide one client per region, otherwise the context's cloud client is used.
+     *
+     * @param group
+     *            the instance group
+     * @return the cloud client for the group's region
+     */
+    protected CloudClient cloudClient(InstanceGroup group) {
+        if (context() instanceof BasicSimianArmyContext) {
+            CloudClient regionalClient = ((BasicSimianArmyContext) context()).awsClient(group.region());
+            if (regionalClient != null) {
+                return regionalClient;
+            }
+        }
+        return context().cloudClient();
+    }
 
-        SshConfig sshConfig = new SshConfig(cfg);
-        ChaosInstance instance = new ChaosInstance(cloudClient, instanceId, sshConfig);
+    private ChaosInstance createChaosInstance(InstanceGroup group, String instanceId, InstanceMetadataCache cache) {
+        SshConfig sshConfig = new SshConfig(cfg, sshCredentials.getCredentials(group.type()));
+        return new ChaosInstance(cloudClient(group), instanceId, sshConfig, cache);
+    }
+
+    private ChaosType pickChaosType(ChaosInstance instance) {
+        Random random = new Random();
 
         List<ChaosType> applicable = Lists.newArrayList();
         for (ChaosType chaosType : allChaosTypes) {
@@ -195,6 +457,7 @@ public class BasicChaosMonkey extends ChaosMonkey {
         Validate.notNull(type);
         Validate.notNull(name);
         cfg.reload(name);
+        groupSettings = newGroupSettings();
         if (!isChaosMonkeyEnabled()) {
             String msg = String.format("Chaos monkey is not enabled for group %s [type %s]",
                     name, type);
@@ -210,7 +473,14 @@ public class BasicChaosMonkey extends ChaosMonkey {
             Collection<String> instances = context().chaosInstanceSelector().select(group, 1.0);
             Validate.isTrue(instances.size() <= 1);
             if (instances.size() == 1) {
-                return terminateInstance(group, instances.iterator().next(), chaosType);
+                // an on-demand termination is not part of a run, its metadata must not linger in the run's cache
+                ChaosInstance instance = createChaosInstance(group, instances.iterator().next(),
+                        new InstanceMetadataCache());
+                try {
+                    return terminateInstance(group, instance, chaosType);
+                } finally {
+                    instance.close();
+                }
             } else {
                 throw new NotFoundException(String.format("No instance is found in group %s [type %s]",
                         name, type));
@@ -243,22 +513,60 @@ public class BasicChaosMonkey extends ChaosMonkey {
     /** {@inheritDoc} */
     @Override
     public Event recordTermination(InstanceGroup group, String instance, ChaosType chaosType) {
+        Event evt = newTerminationEvent(group, instance, chaosType);
+        context().recorder().recordEvent(evt);
+        terminationIndex.add(group, evt.eventTime());
+        return evt;
+    }
+
+    /**
+     * Creates the event recording the termination of an instance. Subclasses can add the fields their queries of
+     * the recorded terminations need.
+     *
+     * @param group
+     *            the instance group
+     * @param instance
+     *            the instance id
+     * @param chaosType
+     *            the chaos type
+     * @return the event, not recorded yet
+     */
+    protected Event newTerminationEvent(InstanceGroup group, String instance, ChaosType chaosType) {
         Event evt = context().recorder().newEvent(Type.CHAOS, EventTypes.CHAOS_TERMINATION, group.region(), instance);
         evt.addField("groupType", group.type().name());
         evt.addField("groupName", group.name());
         evt.addField("chaosType", chaosType.getKey());
-        context().recorder().recordEvent(evt);
         return evt;
     }
 
     /** {@inheritDoc} */
     @Override
     public int getPreviousTerminationCount(InstanceGroup group, Date after) {
+        if (running) {
+            return terminationIndex.count(group, after);
+        }
+        // a single check, not worth loading the terminations of the whole region
+        return countRecordedTerminations(group, after);
+    }
+
+    /**
+     * Counts the recorded terminations of a group after the given time by asking the recorder, for the checks made
+     * outside a run. Subclasses that count the terminations of several groups together, as their termination index
+     * does, must count them the same way here.
+     *
+     * @param group
+     *            the instance group, its name already normalized
+     * @param after
+     *            only count the terminations after this time
+     * @return the number of terminations
+     */
+    protected int countRecordedTerminations(InstanceGroup group, Date after) {
         Map<String, String> query = new HashMap<String, String>();
         query.put("groupType", group.type().name());
         query.put("groupName", group.name());
-        List<Event> evts = context().recorder().findEvents(Type.CHAOS, EventTypes.CHAOS_TERMINATION, query, after);
-        return evts.size();
+        query.put("region", group.region());
+        return AbstractMonkeyRecorder.countEvents(context().recorder(), Type.CHAOS, EventTypes.CHAOS_TERMINATION,
+                query, after);
     }
 
     private Event createEvent(EventTypes chaosTermination, InstanceGroup group, String instance) {
@@ -295,7 +603,6 @@ public class BasicChaosMonkey extends ChaosMonkey {
      * @return double
      */
     protected double getEffectiveProbabilityFromCfg(InstanceGroup group) {
-        String propName;
         if (cfg.getBool(NS + "mandatoryTermination.enabled")) {
             String mtwProp = NS + "mandatoryTermination.windowInDays";
             int mandatoryTerminationWindowInDays = (int) cfg.getNumOrElse(mtwProp, 0);
@@ -309,21 +616,69 @@ public class BasicChaosMonkey extends ChaosMonkey {
                 return mandatoryProb;
             }
         }
-        propName = "probability";
-        double prob = getNumFromCfgOrDefault(group, propName, 1.0);
+        double prob = getGroupSettings(group).getProbability();
         LOGGER.info("Group {} [type {}] enabled [prob {}]", new Object[]{group.name(), group.type(), prob});
         return prob;
     }
 
+    /**
+     * Gets the settings of an instance group, resolving them on first use after the configuration was reloaded.
+     *
+     * @param group
+     *            the instance group
+     * @return the group settings
+     */
+    protected GroupChaosSettings getGroupSettings(InstanceGroup group) {
+        ConcurrentMap<GroupType, ConcurrentMap<String, GroupChaosSettings>> settingsByType = groupSettings;
+        ConcurrentMap<String, GroupChaosSettings> settingsByName = settingsByType.get(group.type());
+        if (settingsByName == null) {
+            ConcurrentMap<String, GroupChaosSettings> newSettings =
+                    new ConcurrentHashMap<String, GroupChaosSettings>();
+            settingsByName = settingsByType.putIfAbsent(group.type(), newSettings);
+            if (settingsByName == null) {
+                settingsByName = newSettings;
+            }
+        }
+        GroupChaosSettings settings = settingsByName.get(group.name());
+        if (settings == null) {
+            settings = resolveGroupSettings(group);
+            settingsByName.put(group.name(), settings);
+        }
+        return settings;
+    }
+
+    private static ConcurrentMap<GroupType, ConcurrentMap<String, GroupChaosSettings>> newGroupSettings() {
+        return new ConcurrentHashMap<GroupType, ConcurrentMap<String, GroupChaosSettings>>();
+    }
+
+    /**
+     * Resolves the settings of an instance group from the configuration, falling back to the settings of the
+     * group type.
+     *
+     * @param group
+     *            the instance group
+     * @return the group settings
+     */
+    protected GroupChaosSettings resolveGroupSettings(InstanceGroup group) {
+        String notificationProp = NS + group.type() + "." + group.name() + ".notification.enabled";
+        String lastOptInProp = NS + group.type() + "." + group.name() + ".lastOptInTimeInMilliseconds";
+        return new GroupChaosSettings(
+                getBoolFromCfgOrDefault(group, "enabled", false),
+                getNumFromCfgOrDefault(group, "probability", 1.0),
+                getNumFromCfgOrDefault(group, "maxTerminationsPerDay", 1.0),
+                (long) cfg.getNumOrElse(lastOptInProp, -1),
+                cfg.getBoolOrElse(notificationProp, false));
+    }
+
     protected double getNumFromCfgOrDefault(InstanceGroup group, String propName, double defaultValue) {
-        String defaultProp = String.format("%s%s.%s", NS, group.type(), propName);
-        String prop = String.format("%s%s.%s.%s", NS, group.type(), group.name(), propName);
+        String defaultProp = NS + group.type() + "." + propName;
+        String prop = NS + group.type() + "." + group.name() + "." + propName;
         return cfg.getNumOrElse(prop, cfg.getNumOrElse(defaultProp, defaultValue));
     }
 
     protected boolean getBoolFromCfgOrDefault(InstanceGroup group, String propName, boolean defaultValue) {
-        String defaultProp = String.format("%s%s.%s", NS, group.type(), propName);
-        String prop = String.format("%s%s.%s.%s", NS, group.type(), group.name(), propName);
+        String defaultProp = NS + group.type() + "." + propName;
+        String prop = NS + group.type() + "." + group.name() + "." + propName;
         return cfg.getBoolOrElse(prop, cfg.getBoolOrElse(defaultProp, defaultValue));
     }
 
@@ -334,9 +689,7 @@ public class BasicChaosMonkey extends ChaosMonkey {
      * @return long
      */
     protected long getLastOptInMilliseconds(InstanceGroup group) {
-        String prop = NS + group.type() + "." + group.name() + ".lastOptInTimeInMilliseconds";
-        long lastOptInTimeInMilliseconds = (long) cfg.getNumOrElse(prop, -1);
-        return lastOptInTimeInMilliseconds;
+        return getGroupSettings(group).getLastOptInTimeInMilliseconds();
     }
 
     private boolean noTerminationInLastWindow(InstanceGroup group, int mandatoryTerminationWindowInDays) {
@@ -364,8 +717,7 @@ public class BasicChaosMonkey extends ChaosMonkey {
      * @return boolean
      */
     protected boolean isGroupEnabled(InstanceGroup group) {
-        boolean enabled = getBoolFromCfgOrDefault(group, "enabled", false);
-        if (enabled) {
+        if (getGroupSettings(group).isEnabled()) {
             return true;
         } else {
             String prop = NS + group.type() + "." + group.name() + ".enabled";
@@ -397,7 +749,18 @@ public class BasicChaosMonkey extends ChaosMonkey {
         return null;
     }
 
-    private Event terminateInstance(InstanceGroup group, String inst, ChaosType chaosType) {
+    private Event terminateInstance(InstanceGroup group, ChaosInstance chaosInstance, ChaosType chaosType) {
+        Event evt = recordTerminationUnlessLeashed(group, chaosInstance.getInstanceId(), chaosType);
+        return evt == null ? null : applyTermination(group, chaosInstance, chaosType, evt);
+    }
+
+    /**
+     * Records the termination of an instance ahead of applying it, so that it counts against the limits of the group
+     * right away.
+     *
+     * @return the termination event, null if the monkey is leashed or the termination could not be recorded
+     */
+    private Event recordTerminationUnlessLeashed(InstanceGroup group, String inst, ChaosType chaosType) {
         Validate.notNull(group);
         Validate.notEmpty(inst);
         String prop = NS + "leashed";
@@ -406,26 +769,38 @@ public class BasicChaosMonkey extends ChaosMonkey {
                     new Object[]{inst, group.name(), group.type(), prop});
             reportEventForSummary(EventTypes.CHAOS_TERMINATION_SKIPPED, group, inst);
             return null;
-        } else {
-            try {
-                Event evt = recordTermination(group, inst, chaosType);
-                sendTerminationNotification(group, inst, chaosType);
-                SshConfig sshConfig = new SshConfig(cfg);
-                ChaosInstance chaosInstance = new ChaosInstance(context().cloudClient(), inst, sshConfig);
-                chaosType.apply(chaosInstance);
-                LOGGER.info("Terminated {} from group {} [{}] with {}",
-                        new Object[]{inst, group.name(), group.type(), chaosType.getKey() });
-                reportEventForSummary(EventTypes.CHAOS_TERMINATION, group, inst);
-                return evt;
-            } catch (NotFoundException e) {
-                LOGGER.warn("Failed to terminate " + inst + ", it does not exist. Perhaps it was already terminated");
-                reportEventForSummary(EventTypes.CHAOS_TERMINATION_SKIPPED, group, inst);
-                return null;
-            } catch (Exception e) {
-                handleTerminationError(inst, e);
-                reportEventForSummary(EventTypes.CHAOS_TERMINATION_SKIPPED, group, inst);
-                return null;
-            }
+        }
+        try {
+            return recordTermination(group, inst, chaosType);
+        } catch (Exception e) {
+            handleTerminationError(inst, e);
+            reportEventForSummary(EventTypes.CHAOS_TERMINATION_SKIPPED, group, inst);
+            return null;
+        }
+    }
+
+    /**
+     * Notifies the owners of a recorded termination and applies it.
+     *
+     * @return the termination event, null if the termination failed
+     */
+    private Event applyTermination(InstanceGroup group, ChaosInstance chaosInstance, ChaosType chaosType, Event evt) {
+        String inst = chaosInstance.getInstanceId();
+        try {
+            sendTerminationNotification(group, inst, chaosType);
+            chaosType.apply(chaosInstance);
+            LOGGER.info("Terminated {} from group {} [{}] with {}",
+                    new Object[]{inst, group.name(), group.type(), chaosType.getKey() });
+            reportEventForSummary(EventTypes.CHAOS_TERMINATION, group, inst);
+            return evt;
+        } catch (NotFoundException e) {
+            LOGGER.warn("Failed to terminate " + inst + ", it does not exist. Perhaps it was already terminated");
+            reportEventForSummary(EventTypes.CHAOS_TERMINATION_SKIPPED, group, inst);
+            return null;
+        } catch (Exception e) {
+            handleTerminationError(inst, e);
+            reportEventForSummary(EventTypes.CHAOS_TERMINATION_SKIPPED, group, inst);
+            return null;
         }
     }
 
@@ -438,7 +813,7 @@ public class BasicChaosMonkey extends ChaosMonkey {
     protected boolean isMaxTerminationCountExceeded(InstanceGroup group) {
         Validate.notNull(group);
         String propName = "maxTerminationsPerDay";
-        double maxTerminationsPerDay = getNumFromCfgOrDefault(group, propName, 1.0);
+        double maxTerminationsPerDay = getGroupSettings(group).getMaxTerminationsPerDay();
         if (maxTerminationsPerDay <= MIN_MAX_TERMINATION_COUNT_PER_DAY) {
             String prop = String.format("%s%s.%s.%s", NS, group.type(), group.name(), propName);
             LOGGER.info("ChaosMonkey is configured to not allow any killing from group {} [{}] "
@@ -468,7 +843,6 @@ public class BasicChaosMonkey extends ChaosMonkey {
     @Override
     public void sendTerminationNotification(InstanceGroup group, String instance, ChaosType chaosType) {
         String propEmailGlobalEnabled = "simianarmy.chaos.notification.global.enabled";
-        String propEmailGroupEnabled = String.format("%s%s.%s.notification.enabled", NS, group.type(), group.name());
 
         ChaosEmailNotifier notifier = context().chaosEmailNotifier();
         if (notifier == null) {
@@ -476,7 +850,7 @@ public class BasicChaosMonkey extends ChaosMonkey {
             LOGGER.error(msg);
             throw new RuntimeException(msg);
         }
-        if (cfg.getBoolOrElse(propEmailGroupEnabled, false)) {
+        if (getGroupSettings(group).isNotificationEnabled()) {
             notifier.sendTerminationNotification(group, instance, chaosType);
         }
         if (cfg.getBoolOrElse(propEmailGlobalEnabled, false)) {
@@ -1,7 +1,15 @@
 package com.netflix.simianarmy.basic.chaos;
 
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.netflix.simianarmy.AbstractMonkeyRecorder;
+import com.netflix.simianarmy.MonkeyRecorder;
+import com.netflix.simianarmy.MonkeyRecorder.Event;
 import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
 import com.netflix.simianarmy.chaos.ChaosType;
+import com.netflix.simianarmy.chaos.TerminationIndex;
 
 /**
  * The Class CloudFormationChaosMonkey. Strips out the random string generated by the CloudFormation api in
@@ -9,6 +17,9 @@ import com.netflix.simianarmy.chaos.ChaosType;
  */
 public class CloudFormationChaosMonkey extends BasicChaosMonkey {
 
+    /** The termination event field holding the group name without the suffix. */
+    private static final String NO_SUFFIX_GROUP_NAME = "noSuffixGroupName";
+
     /**
      * Instantiates a new cloud formation chaos monkey.
      * @param ctx
@@ -67,13 +78,64 @@ public class CloudFormationChaosMonkey extends BasicChaosMonkey {
         super.sendTerminationNotification(noSuffixGroup, instance, chaosType);
     }
 
+    /**
+     * Checks and records the terminations of the stacks of a group one at a time, as they are counted together.
+     */
+    @Override
+    protected String getAccountingKey(InstanceGroup group) {
+        return super.getAccountingKey(noSuffixInstanceGroup(group));
+    }
+
+    /**
+     * Counts the terminations of all the stacks of a group together, as the other settings are shared too.
+     */
+    @Override
+    protected TerminationIndex createTerminationIndex(MonkeyRecorder recorder) {
+        return new TerminationIndex(recorder) {
+            @Override
+            protected String normalizeGroupName(String groupName) {
+                return noSuffixName(groupName);
+            }
+        };
+    }
+
+    /**
+     * Also records the group name without the suffix, so that the terminations of all the stacks of a group can be
+     * queried together.
+     */
+    @Override
+    protected Event newTerminationEvent(InstanceGroup group, String instance, ChaosType chaosType) {
+        Event evt = super.newTerminationEvent(group, instance, chaosType);
+        evt.addField(NO_SUFFIX_GROUP_NAME, noSuffixName(group.name()));
+        return evt;
+    }
+
+    /**
+     * Counts the recorded terminations of all the stacks of a group together, like the termination index does.
+     */
+    @Override
+    protected int countRecordedTerminations(InstanceGroup group, Date after) {
+        Map<String, String> query = new HashMap<String, String>();
+        query.put("groupType", group.type().name());
+        query.put(NO_SUFFIX_GROUP_NAME, group.name());
+        query.put("region", group.region());
+        return AbstractMonkeyRecorder.countEvents(context().recorder(), Type.CHAOS, EventTypes.CHAOS_TERMINATION,
+                query, after);
+    }
+
     /**
      * Return a copy of the instance group removing the randomly generated suffix from
      * its name.
      */
     public InstanceGroup noSuffixInstanceGroup(InstanceGroup group) {
-        String newName = group.name().replaceAll("(-)([^-]*$)", "");
-        InstanceGroup noSuffixGroup = group.copyAs(newName);
+        InstanceGroup noSuffixGroup = group.copyAs(noSuffixName(group.name()));
         return noSuffixGroup;
     }
+
+    /**
+     * Removes the randomly generated suffix from a group name.
+     */
+    private static String noSuffixName(String groupName) {
+        return groupName.replaceAll("(-)([^-]*$)", "");
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.basic.chaos;
+
+/**
+ * The chaos settings of an instance group, resolved from the configuration once with the group type settings used
+ * as the fallback, so that looking at a group during a run does not go back to the configuration.
+ */
+public final class GroupChaosSettings {
+
+    /** Whether the monkey is enabled for the group. */
+    private final boolean enabled;
+
+    /** The termination probability of the group. */
+    private final double probability;
+
+    /** The maximum number of terminations per day. */
+    private final double maxTerminationsPerDay;
+
+    /** The last opt-in time of the group, -1 if not set. */
+    private final long lastOptInTimeInMilliseconds;
+
+    /** Whether termination notifications are sent to the owner of the group. */
+    private final boolean notificationEnabled;
+
+    /**
+     * Instantiates new group chaos settings.
+     *
+     * @param enabled
+     *            whether the monkey is enabled for the group
+     * @param probability
+     *            the termination probability
+     * @param maxTerminationsPerDay
+     *            the maximum number of terminations per day
+     * @param lastOptInTimeInMilliseconds
+     *            the last opt-in time, -1 if not set
+     * @param notificationEnabled
+     *            whether termination notifications are sent to the owner of the group
+     */
+    public GroupChaosSettings(boolean enabled, double probability, double maxTerminationsPerDay,
+            long lastOptInTimeInMilliseconds, boolean notificationEnabled) {
+        this.enabled = enabled;
+        this.probability = probability;
+        this.maxTerminationsPerDay = maxTerminationsPerDay;
+        this.lastOptInTimeInMilliseconds = lastOptInTimeInMilliseconds;
+        this.notificationEnabled = notificationEnabled;
+    }
+
+    /**
+     * Checks if the monkey is enabled for the group.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the configured termination probability, before any mandatory termination.
+     *
+     * @return the probability
+     */
+    public double getProbability() {
+        return probability;
+    }
+
+    /**
+     * Gets the maximum number of terminations per day.
+     *
+     * @return the maximum number of terminations per day
+     */
+    public double getMaxTerminationsPerDay() {
+        return maxTerminationsPerDay;
+    }
+
+    /**
+     * Gets the last opt-in time of the group.
+     *
+     * @return the last opt-in time in milliseconds, -1 if not set
+     */
+    public long getLastOptInTimeInMilliseconds() {
+        return lastOptInTimeInMilliseconds;
+    }
+
+    /**
+     * Checks if termination notifications are sent to the owner of the group.
+     *
+     * @return true if enabled
+     */
+    public boolean isNotificationEnabled() {
+        return notificationEnabled;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GroupChaosSettings[enabled=%s, probability=%s, maxTerminationsPerDay=%s, "
+                + "lastOptIn=%d, notification=%s]", enabled, probability, maxTerminationsPerDay,
+                lastOptInTimeInMilliseconds, notificationEnabled);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.basic.chaos;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.netflix.simianarmy.GroupType;
+import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
+
+/**
+ * The Class ImmutableInstanceGroup. An instance group whose instances are known when it is created, as the crawlers
+ * know all of them up front. The instances are held in an array-backed immutable list that is handed out as is,
+ * and copies of the group under another name share it. Adding an instance replaces the list with a new one, so the
+ * lists already handed out and the copies of the group do not change.
+ */
+public class ImmutableInstanceGroup implements InstanceGroup {
+
+    /** The name. */
+    private final String name;
+
+    /** The type. */
+    private final GroupType type;
+
+    /** The region. */
+    private final String region;
+
+    /** The instances. */
+    private volatile ImmutableList<String> instances;
+
+    /**
+     * Instantiates a new immutable instance group.
+     *
+     * @param name
+     *            the name
+     * @param type
+     *            the type
+     * @param region
+     *            the region
+     * @param instances
+     *            the instances
+     */
+    public ImmutableInstanceGroup(String name, GroupType type, String region, Iterable<String> instances) {
+        this(name, type, region, ImmutableList.copyOf(instances));
+    }
+
+    private ImmutableInstanceGroup(String name, GroupType type, String region, ImmutableList<String> instances) {
+        this.name = name;
+        this.type = type;
+        this.region = region;
+        this.instances = instances;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public GroupType type() {
+        return type;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String name() {
+        return name;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String region() {
+        return region;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<String> instances() {
+        return instances;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void addInstance(String instance) {
+        instances = ImmutableList.<String>builder().addAll(instances).add(instance).build();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ImmutableInstanceGroup copyAs(String newName) {
+        return new ImmutableInstanceGroup(newName, type, region, instances);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImmutableInstanceGroup[name=%s, type=%s, region=%s, instances=%d]",
+                name, type, region, instances.size());
+    }
+}
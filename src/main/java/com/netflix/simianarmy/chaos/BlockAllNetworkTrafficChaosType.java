@@ -55,10 +55,7 @@ public class BlockAllNetworkTrafficChaosType extends ChaosType {
      */
     @Override
     public boolean canApply(ChaosInstance instance) {
-        CloudClient cloudClient = instance.getCloudClient();
-        String instanceId = instance.getInstanceId();
-
-        if (!cloudClient.canChangeInstanceSecurityGroups(instanceId)) {
+        if (!instance.getMetadata().canChangeSecurityGroups()) {
             LOGGER.info("Not a VPC instance, can't change security groups");
             return false;
         }
@@ -74,7 +71,7 @@ public class BlockAllNetworkTrafficChaosType extends ChaosType {
         CloudClient cloudClient = instance.getCloudClient();
         String instanceId = instance.getInstanceId();
 
-        if (!cloudClient.canChangeInstanceSecurityGroups(instanceId)) {
+        if (!instance.getMetadata().canChangeSecurityGroups()) {
             throw new IllegalStateException("canApply should have returned false");
         }
 
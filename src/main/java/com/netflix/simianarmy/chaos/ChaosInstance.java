@@ -17,23 +17,31 @@
  */
 package com.netflix.simianarmy.chaos;
 
+import java.io.Closeable;
+
 import org.jclouds.domain.LoginCredentials;
 import org.jclouds.ssh.SshClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netflix.simianarmy.CloudClient;
+import com.netflix.simianarmy.InstanceMetadata;
 
 /**
  * Wrapper around an instance on which we are going to cause chaos.
+ *
+ * The SSH session opened to check that the instance can be reached is kept open and handed out again by
+ * {@link #leaseSsh()}, so that checking and applying a script chaos type costs a single handshake. Whoever creates
+ * the instance must {@link #close()} it to release the session.
  */
-public class ChaosInstance {
+public class ChaosInstance implements Closeable {
     /** The Constant LOGGER. */
     private static final Logger LOGGER = LoggerFactory.getLogger(ChaosInstance.class);
 
     private final CloudClient cloudClient;
     private final String instanceId;
     private final SshConfig sshConfig;
+    private final InstanceMetadataCache metadataCache;
 
     /**
      * Constructor.
@@ -46,9 +54,27 @@ public class ChaosInstance {
      *            SSH configuration to access instance
      */
     public ChaosInstance(CloudClient cloudClient, String instanceId, SshConfig sshConfig) {
+        this(cloudClient, instanceId, sshConfig, new InstanceMetadataCache());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cloudClient
+     *            client for cloud access
+     * @param instanceId
+     *            id of instance on cloud
+     * @param sshConfig
+     *            SSH configuration to access instance
+     * @param metadataCache
+     *            cache of instance metadata, shared with the other instances of the same run
+     */
+    public ChaosInstance(CloudClient cloudClient, String instanceId, SshConfig sshConfig,
+            InstanceMetadataCache metadataCache) {
         this.cloudClient = cloudClient;
         this.instanceId = instanceId;
         this.sshConfig = sshConfig;
+        this.metadataCache = metadataCache;
     }
 
     /**
@@ -78,11 +104,28 @@ public class ChaosInstance {
         return instanceId;
     }
 
+    /**
+     * Gets the volumes, root device, VPC and security groups of the instance.
+     *
+     * This is fetched once and cached for the duration of the run.
+     *
+     * @return the {@link InstanceMetadata}
+     */
+    public InstanceMetadata getMetadata() {
+        return metadataCache.get(cloudClient, instanceId);
+    }
+
     /**
      * Memoize canConnectSsh function.
      */
     private Boolean canConnectSsh = null;
 
+    /** The open SSH session, null if none. */
+    private SshClient session;
+
+    /** When the SSH session was last handed out. */
+    private long sessionLastUsed;
+
     /**
      * Check if the SSH credentials are working.
      *
@@ -90,16 +133,15 @@ public class ChaosInstance {
      *
      * @return true iff ssh is configured and able to log on to instance.
      */
-    public boolean canConnectSsh(ChaosInstance instance) {
+    public synchronized boolean canConnectSsh(ChaosInstance instance) {
         if (!sshConfig.isEnabled()) {
             return false;
         }
 
         if (canConnectSsh == null) {
             try {
-                // It would be nicer to keep this connection open, but then we'd have to be closed.
-                SshClient client = connectSsh();
-                client.disconnect();
+                // the session is kept for apply to use
+                leaseSsh();
                 canConnectSsh = true;
             } catch (Exception e) {
                 LOGGER.warn("Error making SSH connection to instance", e);
@@ -110,7 +152,46 @@ public class ChaosInstance {
     }
 
     /**
-     * Connect to the instance over SSH.
+     * Gets the SSH session to the instance, connecting if there is none yet or if it has been idle for longer than
+     * the configured timeout. The session stays owned by this instance: callers must not disconnect it, it is
+     * disconnected by {@link #close()}.
+     *
+     * @return {@link SshClient} for the session
+     */
+    public synchronized SshClient leaseSsh() {
+        long now = System.currentTimeMillis();
+        if (session != null && now - sessionLastUsed > sshConfig.getIdleTimeoutMillis()) {
+            LOGGER.debug("Reconnecting the idle SSH session to instance {}", instanceId);
+            disconnectSession();
+        }
+        if (session == null) {
+            session = connectSsh();
+        }
+        sessionLastUsed = now;
+        return session;
+    }
+
+    /**
+     * Disconnects the SSH session, if any.
+     */
+    @Override
+    public synchronized void close() {
+        disconnectSession();
+    }
+
+    private void disconnectSession() {
+        if (session != null) {
+            try {
+                session.disconnect();
+            } catch (Exception e) {
+                LOGGER.warn("Error closing the SSH session to instance " + instanceId, e);
+            }
+            session = null;
+        }
+    }
+
+    /**
+     * Connect to the instance over SSH, opening a new session that the caller must disconnect.
      *
      * @return {@link SshClient} for connection
      */
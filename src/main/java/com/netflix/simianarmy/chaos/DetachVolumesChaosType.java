@@ -51,10 +51,7 @@ public class DetachVolumesChaosType extends ChaosType {
      */
     @Override
     public boolean canApply(ChaosInstance instance) {
-        CloudClient cloudClient = instance.getCloudClient();
-        String instanceId = instance.getInstanceId();
-
-        List<String> volumes = cloudClient.listAttachedVolumes(instanceId, false);
+        List<String> volumes = instance.getMetadata().getAttachedVolumes(false);
         if (volumes.isEmpty()) {
             LOGGER.debug("Can't apply strategy: no non-root EBS volumes");
             return false;
@@ -73,7 +70,7 @@ public class DetachVolumesChaosType extends ChaosType {
 
         // IDEA: We could have a strategy where we detach some of the volumes...
         boolean force = true;
-        for (String volumeId : cloudClient.listAttachedVolumes(instanceId, false)) {
+        for (String volumeId : instance.getMetadata().getAttachedVolumes(false)) {
             cloudClient.detachVolume(instanceId, volumeId, force);
         }
     }
@@ -53,7 +53,7 @@ public class FailOpenstackEndpointChaosType extends ChaosType {
         final OpenstackClient cloudClient = (OpenstackClient) instance
                 .getCloudClient();
         instance.getInstanceId();
-        final SshClient ssh = instance.connectSsh();
+        final SshClient ssh = instance.leaseSsh();
         for (final String endpoint : cloudClient.getEndpoints().get(
                 endpointType)) {
             try {
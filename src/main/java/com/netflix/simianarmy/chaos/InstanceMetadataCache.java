@@ -0,0 +1,127 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.chaos;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.netflix.simianarmy.CloudClient;
+import com.netflix.simianarmy.InstanceMetadata;
+import com.netflix.simianarmy.InstanceMetadataSource;
+import com.netflix.simianarmy.NotFoundException;
+
+/**
+ * Caches the {@link InstanceMetadata} of the instances the monkey is working on, so that the chaos types checking
+ * and applying themselves to an instance share a single lookup. The cache is meant to live for a single run of the
+ * monkey; it does not expire entries.
+ */
+public class InstanceMetadataCache {
+
+    /** The cached metadata, keyed by instance id. */
+    private final ConcurrentMap<String, InstanceMetadata> cache = new ConcurrentHashMap<String, InstanceMetadata>();
+
+    /**
+     * Gets the metadata of an instance, fetching it with the given client if it is not cached yet.
+     *
+     * @param cloudClient
+     *            the client used to fetch the metadata
+     * @param instanceId
+     *            the instance id
+     * @return the instance metadata
+     * @throws NotFoundException
+     *             if the instance no longer exists
+     */
+    public InstanceMetadata get(CloudClient cloudClient, String instanceId) {
+        InstanceMetadata metadata = cache.get(instanceId);
+        if (metadata == null) {
+            metadata = describe(cloudClient, instanceId).get(instanceId);
+            if (metadata == null) {
+                throw new NotFoundException("Instance " + instanceId + " not found");
+            }
+            InstanceMetadata existing = cache.putIfAbsent(instanceId, metadata);
+            if (existing != null) {
+                metadata = existing;
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Fetches the metadata of all the given instances that are not cached yet, letting the client batch the
+     * lookups. Instances that no longer exist are skipped; asking for them later throws a NotFoundException.
+     *
+     * @param cloudClient
+     *            the client used to fetch the metadata
+     * @param instanceIds
+     *            the instance ids
+     */
+    public void prefetch(CloudClient cloudClient, Collection<String> instanceIds) {
+        List<String> missing = new ArrayList<String>();
+        for (String instanceId : instanceIds) {
+            if (!cache.containsKey(instanceId)) {
+                missing.add(instanceId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            cache.putAll(describe(cloudClient, missing.toArray(new String[missing.size()])));
+        }
+    }
+
+    /**
+     * Describes instances with the client, in a single lookup if it is an {@link InstanceMetadataSource}. Otherwise
+     * the metadata is put together from the per instance calls of the client, which do not tell the VPC nor the
+     * security groups of the instance.
+     */
+    private static Map<String, InstanceMetadata> describe(CloudClient cloudClient, String... instanceIds) {
+        if (cloudClient instanceof InstanceMetadataSource) {
+            return ((InstanceMetadataSource) cloudClient).describeInstanceMetadata(instanceIds);
+        }
+        Map<String, InstanceMetadata> metadata = new HashMap<String, InstanceMetadata>();
+        for (String instanceId : instanceIds) {
+            try {
+                List<String> volumeIds = cloudClient.listAttachedVolumes(instanceId, true);
+                List<String> nonRootVolumeIds = cloudClient.listAttachedVolumes(instanceId, false);
+                String rootVolumeId = null;
+                for (String volumeId : volumeIds) {
+                    if (!nonRootVolumeIds.contains(volumeId)) {
+                        rootVolumeId = volumeId;
+                        break;
+                    }
+                }
+                metadata.put(instanceId, new InstanceMetadata(instanceId, volumeIds, rootVolumeId, null,
+                        Collections.<String>emptyList(), cloudClient.canChangeInstanceSecurityGroups(instanceId)));
+            } catch (NotFoundException e) {
+                // left out, like the instances an InstanceMetadataSource does not find
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Removes all the cached metadata.
+     */
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -73,7 +73,7 @@ public abstract class ScriptChaosType extends ChaosType {
     public void apply(ChaosInstance instance) {
         LOGGER.info("Running script for {} on instance {}", getKey(), instance.getInstanceId());
 
-        SshClient ssh = instance.connectSsh();
+        SshClient ssh = instance.leaseSsh();
 
         String filename = getKey().toLowerCase() + ".sh";
         URL url = Resources.getResource(ScriptChaosType.class, "/scripts/" + filename);
@@ -89,6 +89,5 @@ public abstract class ScriptChaosType extends ChaosType {
         if (response.getExitStatus() != 0) {
             LOGGER.warn("Got non-zero output from running script: {}", response);
         }
-        ssh.disconnect();
     }
 }
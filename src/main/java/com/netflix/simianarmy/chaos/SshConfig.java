@@ -17,67 +17,47 @@
  */
 package com.netflix.simianarmy.chaos;
 
-import java.io.File;
-import java.io.IOException;
 import org.jclouds.domain.LoginCredentials;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Strings;
-import com.google.common.io.Files;
 import com.netflix.simianarmy.MonkeyConfiguration;
 
 /**
  * Holds SSH connection info, used for script-based chaos types.
  */
 public class SshConfig {
-    /** The Constant LOGGER. */
-    private static final Logger LOGGER = LoggerFactory.getLogger(SshConfig.class);
+    /** The default SSH session idle timeout. */
+    private static final double DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
 
     /**
      * The SSH credentials to log on to an instance.
      */
     private final LoginCredentials sshCredentials;
 
+    /** How long an open SSH session may sit unused before it is reconnected, in milliseconds. */
+    private final long idleTimeoutMillis;
+
     /**
-     * Constructor.
+     * Constructor, reading the default SSH credentials.
      *
      * @param config
      *            Configuration to use
-     * @throws IOException
      */
     public SshConfig(MonkeyConfiguration config) {
-        String sshUser = config.getStrOrElse("simianarmy.chaos.ssh.user", "root");
-        String privateKey = null;
-
-        String sshKeyPath = config.getStrOrElse("simianarmy.chaos.ssh.key", null);
-        if (sshKeyPath != null) {
-            sshKeyPath = sshKeyPath.trim();
-            if (sshKeyPath.startsWith("~/")) {
-                String home = System.getProperty("user.home");
-                if (!Strings.isNullOrEmpty(home)) {
-                    if (!home.endsWith("/")) {
-                        home += "/";
-                    }
-                    sshKeyPath = home + sshKeyPath.substring(2);
-                }
-            }
-
-            LOGGER.debug("Reading SSH key from {}", sshKeyPath);
-
-            try {
-                privateKey = Files.toString(new File(sshKeyPath), Charsets.UTF_8);
-            } catch (IOException e) {
-                throw new IllegalStateException("Unable to read the specified SSH key: " + sshKeyPath, e);
-            }
-        }
+        this(config, new SshCredentialProvider(config).getCredentials(null));
+    }
 
-        if (privateKey == null) {
-            this.sshCredentials = null;
-        } else {
-            this.sshCredentials = LoginCredentials.builder().user(sshUser).privateKey(privateKey).build();
-        }
+    /**
+     * Constructor.
+     *
+     * @param config
+     *            Configuration to use
+     * @param sshCredentials
+     *            the SSH credentials, null if SSH is not configured
+     */
+    public SshConfig(MonkeyConfiguration config, LoginCredentials sshCredentials) {
+        this.idleTimeoutMillis = (long) (config.getNumOrElse("simianarmy.chaos.ssh.idleTimeoutSeconds",
+                DEFAULT_IDLE_TIMEOUT_SECONDS) * 1000);
+        this.sshCredentials = sshCredentials;
     }
 
     /**
@@ -89,6 +69,15 @@ public class SshConfig {
         return sshCredentials;
     }
 
+    /**
+     * Gets how long an open SSH session may sit unused before it is reconnected.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
     /**
      * Check if ssh is configured.
      *
@@ -0,0 +1,157 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.chaos;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jclouds.domain.LoginCredentials;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import com.netflix.simianarmy.GroupType;
+import com.netflix.simianarmy.MonkeyConfiguration;
+
+/**
+ * Provides the SSH credentials used to log on to instances. Each private key is read once and the resulting
+ * credentials are shared; the key file is looked at again at most every simianarmy.chaos.ssh.keyCheckIntervalSeconds
+ * and read again if it was modified, so that rotated keys are picked up without a restart.
+ *
+ * The user and key can be set per group type with simianarmy.chaos.ssh.TYPE.user and simianarmy.chaos.ssh.TYPE.key,
+ * falling back to simianarmy.chaos.ssh.user and simianarmy.chaos.ssh.key.
+ */
+public class SshCredentialProvider {
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshCredentialProvider.class);
+
+    /** The Constant NS. */
+    private static final String NS = "simianarmy.chaos.ssh.";
+
+    /** The default interval between checks of a key file for changes. */
+    private static final double DEFAULT_KEY_CHECK_INTERVAL_SECONDS = 60;
+
+    private final MonkeyConfiguration config;
+
+    /** The loaded keys, by user and key path. */
+    private final ConcurrentMap<String, LoadedKey> keys = new ConcurrentHashMap<String, LoadedKey>();
+
+    /**
+     * The credentials read from a key file.
+     */
+    private static class LoadedKey {
+        private final LoginCredentials credentials;
+        private final long lastModified;
+        private final long checkedAt;
+
+        LoadedKey(LoginCredentials credentials, long lastModified, long checkedAt) {
+            this.credentials = credentials;
+            this.lastModified = lastModified;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param config
+     *            Configuration to use
+     */
+    public SshCredentialProvider(MonkeyConfiguration config) {
+        this.config = config;
+    }
+
+    /**
+     * Gets the SSH credentials for the instances of a group type.
+     *
+     * @param groupType
+     *            the group type, null for the default credentials
+     * @return the credentials, null if no key is configured
+     */
+    public LoginCredentials getCredentials(GroupType groupType) {
+        String sshUser = config.getStrOrElse(NS + "user", "root");
+        String sshKeyPath = config.getStrOrElse(NS + "key", null);
+        if (groupType != null) {
+            sshUser = config.getStrOrElse(NS + groupType.name() + ".user", sshUser);
+            sshKeyPath = config.getStrOrElse(NS + groupType.name() + ".key", sshKeyPath);
+        }
+        if (sshKeyPath == null) {
+            return null;
+        }
+        return getCredentials(sshUser, expandHome(sshKeyPath.trim()));
+    }
+
+    /**
+     * Gets the credentials of a user and key, reading the key if it is new or has changed.
+     */
+    private LoginCredentials getCredentials(String sshUser, String sshKeyPath) {
+        String cacheKey = sshUser + "|" + sshKeyPath;
+        long now = System.currentTimeMillis();
+        LoadedKey loaded = keys.get(cacheKey);
+        if (loaded != null && now - loaded.checkedAt < keyCheckIntervalMillis()) {
+            return loaded.credentials;
+        }
+
+        File keyFile = new File(sshKeyPath);
+        long lastModified = keyFile.lastModified();
+        if (loaded != null && lastModified == loaded.lastModified) {
+            keys.put(cacheKey, new LoadedKey(loaded.credentials, lastModified, now));
+            return loaded.credentials;
+        }
+
+        LOGGER.debug("Reading SSH key from {}", sshKeyPath);
+        String privateKey;
+        try {
+            privateKey = Files.toString(keyFile, Charsets.UTF_8);
+        } catch (IOException e) {
+            if (loaded == null) {
+                throw new IllegalStateException("Unable to read the specified SSH key: " + sshKeyPath, e);
+            }
+            // the key may be in the middle of being rotated, keep the last one until the next check
+            LOGGER.warn("Unable to read the SSH key " + sshKeyPath + ", keeping the previous key", e);
+            return loaded.credentials;
+        }
+        if (loaded != null) {
+            LOGGER.info("SSH key {} changed, using the new key", sshKeyPath);
+        }
+        LoginCredentials credentials = LoginCredentials.builder().user(sshUser).privateKey(privateKey).build();
+        keys.put(cacheKey, new LoadedKey(credentials, lastModified, now));
+        return credentials;
+    }
+
+    private long keyCheckIntervalMillis() {
+        return (long) (config.getNumOrElse(NS + "keyCheckIntervalSeconds", DEFAULT_KEY_CHECK_INTERVAL_SECONDS) * 1000);
+    }
+
+    private static String expandHome(String path) {
+        if (path.startsWith("~/")) {
+            String home = System.getProperty("user.home");
+            if (!Strings.isNullOrEmpty(home)) {
+                if (!home.endsWith("/")) {
+                    home += "/";
+                }
+                return home + path.substring(2);
+            }
+        }
+        return path;
+    }
+}
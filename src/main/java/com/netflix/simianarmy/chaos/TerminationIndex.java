@@ -0,0 +1,179 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.chaos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.simianarmy.MonkeyRecorder;
+import com.netflix.simianarmy.MonkeyRecorder.Event;
+import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
+
+/**
+ * An in-memory index of the recorded chaos terminations, used to count the terminations of an instance group
+ * since a given time. The terminations of a region are loaded with a single recorder query the first time the
+ * region is looked at, going back as far as the oldest time asked for; each count is then a binary search.
+ * Terminations recorded while the index is in use must be added to it with {@link #add}.
+ *
+ * The index is meant to be reset at the start of every monkey run, so that it picks up terminations recorded
+ * by others.
+ */
+public class TerminationIndex {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(TerminationIndex.class);
+
+    /** The recorder holding the termination events. */
+    private final MonkeyRecorder recorder;
+
+    /** The loaded regions. */
+    private final Map<String, RegionIndex> regions = new HashMap<String, RegionIndex>();
+
+    /**
+     * The terminations of a single region.
+     */
+    private static class RegionIndex {
+        /** The time the terminations were loaded from. */
+        private final long loadedAfter;
+
+        /** The sorted termination times, by group key. */
+        private final Map<String, List<Long>> times = new HashMap<String, List<Long>>();
+
+        RegionIndex(long loadedAfter) {
+            this.loadedAfter = loadedAfter;
+        }
+    }
+
+    /**
+     * Instantiates a new termination index.
+     *
+     * @param recorder
+     *            the recorder holding the termination events
+     */
+    public TerminationIndex(MonkeyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Counts the terminations of an instance group after the given time.
+     *
+     * @param group
+     *            the instance group, its name already normalized
+     * @param after
+     *            only count the terminations after this time
+     * @return the number of terminations
+     */
+    public synchronized int count(InstanceGroup group, Date after) {
+        RegionIndex index = load(group.region(), after.getTime());
+        List<Long> groupTimes = index.times.get(key(group.type().name(), group.name()));
+        if (groupTimes == null) {
+            return 0;
+        }
+        // the position of the first termination strictly after the given time
+        int pos = Collections.binarySearch(groupTimes, after.getTime());
+        if (pos < 0) {
+            pos = -pos - 1;
+        } else {
+            while (pos < groupTimes.size() && groupTimes.get(pos) <= after.getTime()) {
+                pos++;
+            }
+        }
+        return groupTimes.size() - pos;
+    }
+
+    /**
+     * Adds a termination that was just recorded.
+     *
+     * @param group
+     *            the instance group
+     * @param time
+     *            the termination time
+     */
+    public synchronized void add(InstanceGroup group, Date time) {
+        RegionIndex index = regions.get(group.region());
+        if (index != null && time.getTime() > index.loadedAfter) {
+            insert(index, key(group.type().name(), normalizeGroupName(group.name())), time.getTime());
+        }
+    }
+
+    /**
+     * Drops all the loaded terminations; they are loaded again on the next count.
+     */
+    public synchronized void reset() {
+        regions.clear();
+    }
+
+    /**
+     * Normalizes the name of the group a termination was recorded for, so that the terminations of groups that
+     * are managed as one are counted together. The names passed to {@link #count} must already be normalized.
+     *
+     * @param groupName
+     *            the recorded group name
+     * @return the normalized group name
+     */
+    protected String normalizeGroupName(String groupName) {
+        return groupName;
+    }
+
+    /**
+     * Gets the index of a region, (re)loading it from the recorder if it does not go back far enough.
+     */
+    private RegionIndex load(String region, long after) {
+        RegionIndex index = regions.get(region);
+        if (index != null && index.loadedAfter <= after) {
+            return index;
+        }
+        index = new RegionIndex(after);
+        Map<String, String> query = new HashMap<String, String>();
+        query.put("region", region);
+        List<Event> evts = recorder.findEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(after));
+        for (Event evt : evts) {
+            String groupType = evt.field("groupType");
+            String groupName = evt.field("groupName");
+            if (groupType == null || groupName == null) {
+                continue;
+            }
+            insert(index, key(groupType, normalizeGroupName(groupName)), evt.eventTime().getTime());
+        }
+        LOGGER.info("Loaded {} terminations in region {} since {}", new Object[]{evts.size(), region, new Date(after)});
+        regions.put(region, index);
+        return index;
+    }
+
+    private static void insert(RegionIndex index, String key, long time) {
+        List<Long> groupTimes = index.times.get(key);
+        if (groupTimes == null) {
+            groupTimes = new ArrayList<Long>();
+            index.times.put(key, groupTimes);
+        }
+        int pos = Collections.binarySearch(groupTimes, time);
+        groupTimes.add(pos < 0 ? -pos - 1 : pos, time);
+    }
+
+    private static String key(String groupType, String groupName) {
+        return groupType + "|" + groupName;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.ComputeMetadata;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the jclouds nodes of a region by jclouds id, so that finding the node of an instance does not list all
+ * the nodes every time. The nodes are listed once and kept for a time to live; a node that is not in the index,
+ * e.g. one started since it was built, is fetched on its own.
+ */
+public class JcloudsNodeIndex {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JcloudsNodeIndex.class);
+
+    /** The default time to live of the index, long enough to cover a monkey run. */
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /** How long the listed nodes are kept. */
+    private final long ttlMillis;
+
+    /** The nodes by jclouds id, null until listed. */
+    private Map<String, NodeMetadata> nodes;
+
+    /** When the nodes were listed. */
+    private long listedAt;
+
+    /**
+     * Instantiates a new node index with the default time to live.
+     */
+    public JcloudsNodeIndex() {
+        this(DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Instantiates a new node index.
+     *
+     * @param ttlMillis
+     *            how long the listed nodes are kept, in milliseconds
+     */
+    public JcloudsNodeIndex(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Finds a node, listing the nodes if the index is empty or expired.
+     *
+     * @param computeService
+     *            the compute service to list and fetch the nodes with
+     * @param jcloudsId
+     *            the jclouds id of the node
+     * @return the node
+     * @throws IllegalStateException
+     *             if there is no such node
+     */
+    public synchronized NodeMetadata get(ComputeService computeService, String jcloudsId) {
+        long now = System.currentTimeMillis();
+        if (nodes == null || now - listedAt > ttlMillis) {
+            Map<String, NodeMetadata> listed = new HashMap<String, NodeMetadata>();
+            for (ComputeMetadata n : computeService.listNodes()) {
+                listed.put(n.getId(), (NodeMetadata) n);
+            }
+            LOGGER.info("Listed {} jclouds nodes", listed.size());
+            nodes = listed;
+            listedAt = now;
+        }
+
+        NodeMetadata node = nodes.get(jcloudsId);
+        if (node == null) {
+            node = computeService.getNodeMetadata(jcloudsId);
+            if (node == null) {
+                LOGGER.warn("Unable to find jclouds node {} among {} listed nodes", jcloudsId, nodes.size());
+                throw new IllegalStateException("Unable to find node using jclouds: " + jcloudsId);
+            }
+            nodes.put(jcloudsId, node);
+        }
+        return node;
+    }
+
+    /**
+     * Drops a node, e.g. one that was just terminated; it is fetched again on its next lookup.
+     *
+     * @param jcloudsId
+     *            the jclouds id of the node
+     */
+    public synchronized void remove(String jcloudsId) {
+        if (nodes != null) {
+            nodes.remove(jcloudsId);
+        }
+    }
+
+    /**
+     * Drops the listed nodes; they are listed again on the next lookup.
+     */
+    public synchronized void invalidate() {
+        nodes = null;
+    }
+}
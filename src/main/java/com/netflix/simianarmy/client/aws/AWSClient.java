@@ -18,7 +18,10 @@
 package com.netflix.simianarmy.client.aws;
 
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceClient;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.retry.PredefinedRetryPolicies;
 import com.amazonaws.services.autoscaling.AmazonAutoScalingClient;
 import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
 import com.amazonaws.services.autoscaling.model.AutoScalingInstanceDetails;
@@ -51,6 +54,8 @@ import com.amazonaws.services.ec2.model.DescribeVolumesRequest;
 import com.amazonaws.services.ec2.model.DescribeVolumesResult;
 import com.amazonaws.services.ec2.model.DetachVolumeRequest;
 import com.amazonaws.services.ec2.model.EbsInstanceBlockDevice;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.GroupIdentifier;
 import com.amazonaws.services.ec2.model.Image;
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.InstanceBlockDeviceMapping;
@@ -70,18 +75,19 @@ import com.amazonaws.services.simpledb.AmazonSimpleDBClient;
 import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
 import com.google.inject.Module;
 import com.netflix.simianarmy.CloudClient;
+import com.netflix.simianarmy.InstanceMetadata;
+import com.netflix.simianarmy.InstanceMetadataSource;
 import com.netflix.simianarmy.NotFoundException;
+import com.netflix.simianarmy.client.JcloudsNodeIndex;
 
 import org.apache.commons.lang.Validate;
 import org.jclouds.ContextBuilder;
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.ComputeServiceContext;
 import org.jclouds.compute.Utils;
-import org.jclouds.compute.domain.ComputeMetadata;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.domain.NodeMetadataBuilder;
 import org.jclouds.domain.LoginCredentials;
@@ -94,27 +100,54 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 
 /**
  * The Class AWSClient. Simple Amazon EC2 and Amazon ASG client interface.
  */
-public class AWSClient implements CloudClient {
+public class AWSClient implements CloudClient, InstanceMetadataSource {
 
     /** The Constant LOGGER. */
     private static final Logger LOGGER = LoggerFactory.getLogger(AWSClient.class);
 
+    /** The maximum number of instance ids looked up by a single DescribeInstances call. */
+    private static final int MAX_INSTANCE_IDS_PER_DESCRIBE = 200;
+
+    /** The smallest page size DescribeInstances accepts. */
+    private static final int MIN_INSTANCE_PAGE_SIZE = 5;
+
+    /** The largest page size DescribeInstances accepts. */
+    private static final int MAX_INSTANCE_PAGE_SIZE = 1000;
+
     /** The region. */
     private final String region;
 
     private final AWSCredentialsProvider awsCredentialsProvider;
 
+    /** The configuration shared by all the SDK clients, controls their connection pools. */
+    private final ClientConfiguration awsClientConfig;
+
+    /** The rate limiters of the AWS services, null to call the services without limiting their rate. */
+    private final AwsRateLimiters rateLimiters;
+
     private ComputeService jcloudsComputeService;
 
+    /** The jclouds nodes of the region, listed once and shared by the SSH connections. */
+    protected final JcloudsNodeIndex jcloudsNodes = new JcloudsNodeIndex();
+
+    /** The SDK clients, created on first use and shared by all callers. The SDK clients are thread safe. */
+    private AmazonEC2Client ec2Client;
+
+    private AmazonAutoScalingClient asgClient;
+
+    private AmazonElasticLoadBalancingClient elbClient;
+
+    private AmazonSimpleDBClient sdbClient;
+
     /**
      * This constructor will let the AWS SDK obtain the credentials, which will
      * choose such in the following order:
@@ -148,8 +181,7 @@ public class AWSClient implements CloudClient {
      * @see com.netflix.simianarmy.basic.BasicSimianArmyContext#exportCredentials(String, String)
      */
     public AWSClient(String region) {
-        this.region = region;
-        this.awsCredentialsProvider = null;
+        this(region, null);
     }
 
     /**
@@ -160,8 +192,43 @@ public class AWSClient implements CloudClient {
      *          the AWS credentials provider
      */
     public AWSClient(String region, AWSCredentialsProvider awsCredentialsProvider) {
+        this(region, awsCredentialsProvider, new ClientConfiguration());
+    }
+
+    /**
+     * The constructor allows you to provide your own AWS credentials provider and the configuration of the
+     * connection pools of the SDK clients.
+     * @param region
+     *          the region
+     * @param awsCredentialsProvider
+     *          the AWS credentials provider, or null to let the AWS SDK obtain the credentials
+     * @param awsClientConfig
+     *          the configuration used by all the SDK clients
+     */
+    public AWSClient(String region, AWSCredentialsProvider awsCredentialsProvider,
+            ClientConfiguration awsClientConfig) {
+        this(region, awsCredentialsProvider, awsClientConfig, null);
+    }
+
+    /**
+     * The constructor allows you to provide your own AWS credentials provider, the configuration of the
+     * connection pools of the SDK clients and the rate limiters of the AWS services.
+     * @param region
+     *          the region
+     * @param awsCredentialsProvider
+     *          the AWS credentials provider, or null to let the AWS SDK obtain the credentials
+     * @param awsClientConfig
+     *          the configuration used by all the SDK clients
+     * @param rateLimiters
+     *          the rate limiters of the AWS services, or null to call the services without limiting their rate
+     */
+    public AWSClient(String region, AWSCredentialsProvider awsCredentialsProvider,
+            ClientConfiguration awsClientConfig, AwsRateLimiters rateLimiters) {
+        Validate.notNull(awsClientConfig);
         this.region = region;
         this.awsCredentialsProvider = awsCredentialsProvider;
+        this.awsClientConfig = awsClientConfig;
+        this.rateLimiters = rateLimiters;
     }
 
     /**
@@ -178,15 +245,17 @@ public class AWSClient implements CloudClient {
      *
      * @return the Amazon EC2 client
      */
-    protected AmazonEC2 ec2Client() {
-        AmazonEC2 client;
-        if (awsCredentialsProvider == null) {
-            client = new AmazonEC2Client();
-        } else {
-            client = new AmazonEC2Client(awsCredentialsProvider);
+    protected synchronized AmazonEC2 ec2Client() {
+        if (ec2Client == null) {
+            if (awsCredentialsProvider == null) {
+                ec2Client = new AmazonEC2Client(clientConfig("ec2"));
+            } else {
+                ec2Client = new AmazonEC2Client(awsCredentialsProvider, clientConfig("ec2"));
+            }
+            limitRate(ec2Client, "ec2");
+            ec2Client.setEndpoint("ec2." + region + ".amazonaws.com");
         }
-        client.setEndpoint("ec2." + region + ".amazonaws.com");
-        return client;
+        return ec2Client;
     }
 
     /**
@@ -194,15 +263,17 @@ public class AWSClient implements CloudClient {
      *
      * @return the Amazon Auto Scaling client
      */
-    protected AmazonAutoScalingClient asgClient() {
-        AmazonAutoScalingClient client;
-        if (awsCredentialsProvider == null) {
-            client = new AmazonAutoScalingClient();
-        } else {
-            client = new AmazonAutoScalingClient(awsCredentialsProvider);
+    protected synchronized AmazonAutoScalingClient asgClient() {
+        if (asgClient == null) {
+            if (awsCredentialsProvider == null) {
+                asgClient = new AmazonAutoScalingClient(clientConfig("autoscaling"));
+            } else {
+                asgClient = new AmazonAutoScalingClient(awsCredentialsProvider, clientConfig("autoscaling"));
+            }
+            limitRate(asgClient, "autoscaling");
+            asgClient.setEndpoint("autoscaling." + region + ".amazonaws.com");
         }
-        client.setEndpoint("autoscaling." + region + ".amazonaws.com");
-        return client;
+        return asgClient;
     }
 
     /**
@@ -210,15 +281,18 @@ public class AWSClient implements CloudClient {
      *
      * @return the Amazon ELB client
      */
-    protected AmazonElasticLoadBalancingClient elbClient() {
-        AmazonElasticLoadBalancingClient client;
-        if (awsCredentialsProvider == null) {
-            client = new AmazonElasticLoadBalancingClient();
-        } else {
-            client = new AmazonElasticLoadBalancingClient(awsCredentialsProvider);
+    protected synchronized AmazonElasticLoadBalancingClient elbClient() {
+        if (elbClient == null) {
+            if (awsCredentialsProvider == null) {
+                elbClient = new AmazonElasticLoadBalancingClient(clientConfig("elasticloadbalancing"));
+            } else {
+                elbClient = new AmazonElasticLoadBalancingClient(awsCredentialsProvider,
+                        clientConfig("elasticloadbalancing"));
+            }
+            limitRate(elbClient, "elasticloadbalancing");
+            elbClient.setEndpoint("elasticloadbalancing." + region + ".amazonaws.com");
         }
-        client.setEndpoint("elasticloadbalancing." + region + ".amazonaws.com");
-        return client;
+        return elbClient;
     }
 
     /**
@@ -226,21 +300,75 @@ public class AWSClient implements CloudClient {
      *
      * @return the Amazon SimpleDB client
      */
-    public AmazonSimpleDB sdbClient() {
-        AmazonSimpleDB client;
-        if (awsCredentialsProvider == null) {
-            client = new AmazonSimpleDBClient();
-        } else {
-            client = new AmazonSimpleDBClient(awsCredentialsProvider);
+    public synchronized AmazonSimpleDB sdbClient() {
+        if (sdbClient == null) {
+            if (awsCredentialsProvider == null) {
+                sdbClient = new AmazonSimpleDBClient(clientConfig("sdb"));
+            } else {
+                sdbClient = new AmazonSimpleDBClient(awsCredentialsProvider, clientConfig("sdb"));
+            }
+            limitRate(sdbClient, "sdb");
+            // us-east-1 has special naming
+            // http://docs.amazonwebservices.com/general/latest/gr/rande.html#sdb_region
+            if (region == null || region.equals("us-east-1")) {
+                sdbClient.setEndpoint("sdb.amazonaws.com");
+            } else {
+                sdbClient.setEndpoint("sdb." + region + ".amazonaws.com");
+            }
         }
-        // us-east-1 has special naming
-        // http://docs.amazonwebservices.com/general/latest/gr/rande.html#sdb_region
-        if (region == null || region.equals("us-east-1")) {
-            client.setEndpoint("sdb.amazonaws.com");
-        } else {
-            client.setEndpoint("sdb." + region + ".amazonaws.com");
+        return sdbClient;
+    }
+
+    /**
+     * Gets the configuration of the SDK client of a service. When the rate of the calls is limited, failed calls
+     * are retried with the jittered backoff of the rate limiter of the service.
+     */
+    private ClientConfiguration clientConfig(String service) {
+        if (rateLimiters == null) {
+            return awsClientConfig;
+        }
+        ClientConfiguration clientConfig = new ClientConfiguration(awsClientConfig);
+        clientConfig.setRetryPolicy(rateLimiters.get(region, service).retryPolicy(
+                PredefinedRetryPolicies.DEFAULT_MAX_ERROR_RETRY));
+        return clientConfig;
+    }
+
+    /**
+     * Makes the calls of an SDK client go through the rate limiter of its service.
+     */
+    private void limitRate(AmazonWebServiceClient sdkClient, String service) {
+        if (rateLimiters != null) {
+            sdkClient.addRequestHandler(rateLimiters.get(region, service));
+        }
+    }
+
+    /**
+     * Shuts down the SDK clients and the jclouds compute service, releasing their connection pools, and drops the
+     * listed jclouds nodes. The clients are created again if the AWSClient is used after being shut down.
+     */
+    public synchronized void shutdown() {
+        LOGGER.info(String.format("Shutting down the AWS clients of region %s.", region));
+        if (ec2Client != null) {
+            ec2Client.shutdown();
+            ec2Client = null;
+        }
+        if (asgClient != null) {
+            asgClient.shutdown();
+            asgClient = null;
+        }
+        if (elbClient != null) {
+            elbClient.shutdown();
+            elbClient = null;
+        }
+        if (sdbClient != null) {
+            sdbClient.shutdown();
+            sdbClient = null;
         }
-        return client;
+        if (jcloudsComputeService != null) {
+            jcloudsComputeService.getContext().close();
+            jcloudsComputeService = null;
+        }
+        jcloudsNodes.invalidate();
     }
 
     /**
@@ -298,14 +426,30 @@ public class AWSClient implements CloudClient {
             LOGGER.info(String.format("Getting ELBs for %d names in region %s.", names.length, region));
         }
 
-        AmazonElasticLoadBalancingClient elbClient = elbClient();
-        DescribeLoadBalancersRequest request = new DescribeLoadBalancersRequest().withLoadBalancerNames(names);
-        DescribeLoadBalancersResult result = elbClient.describeLoadBalancers(request);
-        List<LoadBalancerDescription> elbs = result.getLoadBalancerDescriptions();
+        List<LoadBalancerDescription> elbs = Lists.newArrayList(iterateElasticLoadBalancers(names));
         LOGGER.info(String.format("Got %d ELBs in region %s.", elbs.size(), region));
         return elbs;
     }
 
+    /**
+     * Iterates over a set of specific ELBs, fetching them a page at a time while iterating.
+     *
+     * @param names the ELB names, all the ELBs of the region if empty
+     * @return the ELBs
+     */
+    public Iterable<LoadBalancerDescription> iterateElasticLoadBalancers(final String... names) {
+        return new PaginatedIterable<LoadBalancerDescription>() {
+            @Override
+            protected Page<LoadBalancerDescription> fetchPage(String token) {
+                DescribeLoadBalancersRequest request = new DescribeLoadBalancersRequest()
+                        .withLoadBalancerNames(names).withMarker(token);
+                DescribeLoadBalancersResult result = elbClient().describeLoadBalancers(request);
+                return new Page<LoadBalancerDescription>(result.getLoadBalancerDescriptions(),
+                        result.getNextMarker());
+            }
+        };
+    }
+
 
     /**
      * Describe a set of specific auto-scaling instances.
@@ -365,11 +509,44 @@ public class AWSClient implements CloudClient {
         for (Reservation reservation : result.getReservations()) {
             instances.addAll(reservation.getInstances());
         }
+        while (!Strings.isNullOrEmpty(result.getNextToken())) {
+            request.setNextToken(result.getNextToken());
+            result = ec2Client.describeInstances(request);
+            for (Reservation reservation : result.getReservations()) {
+                instances.addAll(reservation.getInstances());
+            }
+        }
 
         LOGGER.info(String.format("Got %d EC2 instances in region %s.", instances.size(), region));
         return instances;
     }
 
+    /**
+     * Iterates over the instances matching the given filters, fetching them a page at a time while iterating.
+     * Unlike describeInstances, this keeps memory flat however many instances the region has.
+     *
+     * @param pageSize the number of instances fetched per call, between 5 and 1000
+     * @param filters the server side filters, e.g. on instance-state-name or tag:Name; all instances if empty
+     * @return the instances
+     */
+    public Iterable<Instance> iterateInstances(final int pageSize, final Filter... filters) {
+        Validate.isTrue(pageSize >= MIN_INSTANCE_PAGE_SIZE && pageSize <= MAX_INSTANCE_PAGE_SIZE,
+                "pageSize must be between 5 and 1000");
+        return new PaginatedIterable<Instance>() {
+            @Override
+            protected Page<Instance> fetchPage(String token) {
+                DescribeInstancesRequest request = new DescribeInstancesRequest()
+                        .withFilters(filters).withMaxResults(pageSize).withNextToken(token);
+                DescribeInstancesResult result = ec2Client().describeInstances(request);
+                List<Instance> instances = new ArrayList<Instance>();
+                for (Reservation reservation : result.getReservations()) {
+                    instances.addAll(reservation.getInstances());
+                }
+                return new Page<Instance>(instances, result.getNextToken());
+            }
+        };
+    }
+
     /**
      * Describe a set of specific launch configurations.
      *
@@ -468,6 +645,8 @@ public class AWSClient implements CloudClient {
                 throw new NotFoundException("AWS instance " + instanceId + " not found", e);
             }
             throw e;
+        } finally {
+            jcloudsNodes.remove(getJcloudsId(instanceId));
         }
     }
 
@@ -605,25 +784,7 @@ public class AWSClient implements CloudClient {
         try {
             List<String> volumeIds = new ArrayList<String>();
             for (Instance instance : describeInstances(instanceId)) {
-                String rootDeviceName = instance.getRootDeviceName();
-
-                for (InstanceBlockDeviceMapping ibdm : instance.getBlockDeviceMappings()) {
-                    EbsInstanceBlockDevice ebs = ibdm.getEbs();
-                    if (ebs == null) {
-                        continue;
-                    }
-
-                    String volumeId = ebs.getVolumeId();
-                    if (Strings.isNullOrEmpty(volumeId)) {
-                        continue;
-                    }
-
-                    if (!includeRoot && rootDeviceName != null && rootDeviceName.equals(ibdm.getDeviceName())) {
-                        continue;
-                    }
-
-                    volumeIds.add(volumeId);
-                }
+                volumeIds.addAll(toInstanceMetadata(instance).getAttachedVolumes(includeRoot));
             }
             return volumeIds;
         } catch (AmazonServiceException e) {
@@ -634,6 +795,63 @@ public class AWSClient implements CloudClient {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, InstanceMetadata> describeInstanceMetadata(String... instanceIds) {
+        Validate.notEmpty(instanceIds);
+        LOGGER.info(String.format("Getting metadata of %d EC2 instances in region %s.", instanceIds.length, region));
+        Map<String, InstanceMetadata> metadata = new HashMap<String, InstanceMetadata>();
+        for (List<String> chunk : Lists.partition(Arrays.asList(instanceIds), MAX_INSTANCE_IDS_PER_DESCRIBE)) {
+            // Filtering on the ids, instead of asking for them, leaves out the instances that no longer exist
+            // rather than failing the whole request.
+            DescribeInstancesRequest request = new DescribeInstancesRequest()
+                    .withFilters(new Filter("instance-id", chunk));
+            DescribeInstancesResult result = ec2Client().describeInstances(request);
+            for (Reservation reservation : result.getReservations()) {
+                for (Instance instance : reservation.getInstances()) {
+                    metadata.put(instance.getInstanceId(), toInstanceMetadata(instance));
+                }
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Extracts the volumes, root device, VPC and security groups of an instance.
+     *
+     * @param instance
+     *            the instance
+     * @return the instance metadata
+     */
+    protected InstanceMetadata toInstanceMetadata(Instance instance) {
+        String rootDeviceName = instance.getRootDeviceName();
+        String rootVolumeId = null;
+        List<String> volumeIds = new ArrayList<String>();
+        for (InstanceBlockDeviceMapping ibdm : instance.getBlockDeviceMappings()) {
+            EbsInstanceBlockDevice ebs = ibdm.getEbs();
+            if (ebs == null) {
+                continue;
+            }
+
+            String volumeId = ebs.getVolumeId();
+            if (Strings.isNullOrEmpty(volumeId)) {
+                continue;
+            }
+
+            if (rootDeviceName != null && rootDeviceName.equals(ibdm.getDeviceName())) {
+                rootVolumeId = volumeId;
+            }
+            volumeIds.add(volumeId);
+        }
+        List<String> securityGroupIds = new ArrayList<String>();
+        for (GroupIdentifier group : instance.getSecurityGroups()) {
+            securityGroupIds.add(group.getGroupId());
+        }
+        String vpcId = Strings.emptyToNull(instance.getVpcId());
+        return new InstanceMetadata(instance.getInstanceId(), volumeIds, rootVolumeId, vpcId, securityGroupIds,
+                vpcId != null);
+    }
+
     /**
      * Describe a set of security groups.
      *
@@ -728,7 +946,7 @@ public class AWSClient implements CloudClient {
         ComputeService computeService = getJcloudsComputeService();
 
         String jcloudsId = getJcloudsId(instanceId);
-        NodeMetadata node = getJcloudsNode(computeService, jcloudsId);
+        NodeMetadata node = jcloudsNodes.get(computeService, jcloudsId);
 
         node = NodeMetadataBuilder.fromNodeMetadata(node).credentials(credentials).build();
 
@@ -740,31 +958,6 @@ public class AWSClient implements CloudClient {
         return ssh;
     }
 
-    private NodeMetadata getJcloudsNode(ComputeService computeService, String jcloudsId) {
-        // Work around a jclouds bug / documentation issue...
-        // TODO: Figure out what's broken, and eliminate this function
-
-        // This should work (?):
-        // Set<NodeMetadata> nodes = computeService.listNodesByIds(Collections.singletonList(jcloudsId));
-
-        Set<NodeMetadata> nodes = Sets.newHashSet();
-        for (ComputeMetadata n : computeService.listNodes()) {
-            if (jcloudsId.equals(n.getId())) {
-                nodes.add((NodeMetadata) n);
-            }
-        }
-
-        if (nodes.isEmpty()) {
-            LOGGER.warn("Unable to find jclouds node: {}", jcloudsId);
-            for (ComputeMetadata n : computeService.listNodes()) {
-                LOGGER.info("Did find node: {}", n);
-            }
-            throw new IllegalStateException("Unable to find node using jclouds: " + jcloudsId);
-        }
-        NodeMetadata node = Iterables.getOnlyElement(nodes);
-        return node;
-    }
-
     /** {@inheritDoc} */
     @Override
     public String findSecurityGroup(String instanceId, String groupName) {
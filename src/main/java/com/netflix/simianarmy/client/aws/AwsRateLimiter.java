@@ -0,0 +1,314 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client.aws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryUtils;
+
+/**
+ * Limits the rate of the calls an SDK client makes to one AWS service in one region. The calls take permits from a
+ * token bucket whose rate adapts to the throttling responses of the service: every successful call raises the rate
+ * by a fixed step and every throttled call halves it (additive increase, multiplicative decrease), so that the
+ * monkeys slow down when the account's API quota is shared with other tools and speed up again when it is not.
+ *
+ * The limiter is added to an SDK client as a request handler, and its {@link #retryPolicy(int)} retries failed calls
+ * after a jittered exponential backoff that also goes through the bucket.
+ */
+public class AwsRateLimiter extends RequestHandler2 {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AwsRateLimiter.class);
+
+    /** The error code EC2 answers with when the request rate is exceeded. */
+    private static final String REQUEST_LIMIT_EXCEEDED = "RequestLimitExceeded";
+
+    /** The factor the rate is multiplied by on throttling. */
+    private static final double DECREASE_FACTOR = 0.5;
+
+    /** Throttled calls within this time of a decrease are part of the same burst and do not lower the rate again. */
+    private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** The base delay before retrying a failed call. */
+    private static final long BASE_DELAY_MILLIS = 100;
+
+    /** The base delay before retrying a throttled call. */
+    private static final long THROTTLED_BASE_DELAY_MILLIS = 500;
+
+    /** The longest delay before retrying a call. */
+    private static final long MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    private final String name;
+    private final double minRate;
+    private final double maxRate;
+    private final double increase;
+
+    /** The current rate, in calls per second. */
+    private double rate;
+
+    /** The permits in the bucket; negative when calls have reserved permits ahead. */
+    private double permits;
+
+    /** When the bucket was last refilled. */
+    private long refilledAt;
+
+    /** When the rate was last decreased. */
+    private long decreasedAt;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong throttles = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Instantiates a new rate limiter.
+     *
+     * @param name
+     *            the name of the limiter, e.g. the region and service, used in the logs
+     * @param minRate
+     *            the lowest rate in calls per second, the rate is never lowered below it
+     * @param maxRate
+     *            the highest rate in calls per second, which the limiter starts at
+     * @param increase
+     *            how much each successful call raises the rate, in calls per second
+     */
+    public AwsRateLimiter(String name, double minRate, double maxRate, double increase) {
+        if (minRate <= 0 || maxRate < minRate || increase < 0) {
+            throw new IllegalArgumentException(String.format("Invalid rate limits for %s: min %s, max %s, increase %s",
+                    name, minRate, maxRate, increase));
+        }
+        this.name = name;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increase = increase;
+        this.rate = maxRate;
+        this.permits = Math.max(1, maxRate);
+        this.refilledAt = System.nanoTime();
+        this.decreasedAt = refilledAt - DECREASE_COOLDOWN_NANOS;
+    }
+
+    /**
+     * Takes a permit from the bucket, reserving the next one if the bucket is empty.
+     *
+     * @return how long to wait, in nanoseconds, before the permit can be used
+     */
+    synchronized long reserve() {
+        long now = System.nanoTime();
+        double burst = Math.max(1, rate);
+        permits = Math.min(burst, permits + (now - refilledAt) * rate / TimeUnit.SECONDS.toNanos(1));
+        refilledAt = now;
+        permits -= 1;
+        if (permits >= 0) {
+            return 0;
+        }
+        return (long) (-permits / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Waits for a permit to make a call.
+     */
+    public void acquire() {
+        calls.incrementAndGet();
+        long wait = reserve();
+        if (wait > 0) {
+            waitNanos.addAndGet(wait);
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted while waiting to call " + name, e);
+            }
+        }
+    }
+
+    /**
+     * Raises the rate after a successful call.
+     */
+    synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + increase);
+    }
+
+    /**
+     * Lowers the rate after a throttled call.
+     */
+    void onThrottle() {
+        throttles.incrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - decreasedAt < DECREASE_COOLDOWN_NANOS) {
+                return;
+            }
+            decreasedAt = now;
+            rate = Math.max(minRate, rate * DECREASE_FACTOR);
+            LOGGER.info(String.format("Throttled by %s, lowering the rate to %.2f calls per second", name, rate));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void beforeRequest(Request<?> request) {
+        acquire();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterResponse(Request<?> request, Response<?> response) {
+        onSuccess();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterError(Request<?> request, Response<?> response, Exception e) {
+        if (isThrottlingException(e)) {
+            onThrottle();
+        }
+    }
+
+    /**
+     * Creates the retry policy of an SDK client using this limiter. Failed calls are retried when the default SDK
+     * policy would retry them, or when EC2 reports the request limit exceeded, after a random delay of up to an
+     * exponentially growing bound (longer for throttled calls) plus the wait for a permit.
+     *
+     * @param maxErrorRetry
+     *            the number of retries, unless the client configuration sets one
+     * @return the retry policy
+     */
+    public RetryPolicy retryPolicy(int maxErrorRetry) {
+        RetryPolicy.RetryCondition condition = new RetryPolicy.RetryCondition() {
+            @Override
+            public boolean shouldRetry(AmazonWebServiceRequest originalRequest, AmazonClientException exception,
+                    int retriesAttempted) {
+                return isThrottlingException(exception) || PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION
+                        .shouldRetry(originalRequest, exception, retriesAttempted);
+            }
+        };
+        RetryPolicy.BackoffStrategy backoff = new RetryPolicy.BackoffStrategy() {
+            @Override
+            public long delayBeforeNextRetry(AmazonWebServiceRequest originalRequest, AmazonClientException exception,
+                    int retriesAttempted) {
+                // the SDK only calls the request handlers once per call, so the retries are accounted for here
+                boolean throttled = isThrottlingException(exception);
+                if (throttled) {
+                    onThrottle();
+                }
+                calls.incrementAndGet();
+                long wait = TimeUnit.NANOSECONDS.toMillis(reserve());
+                waitNanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(wait));
+                return jitteredDelay(retriesAttempted, throttled) + wait;
+            }
+        };
+        return new RetryPolicy(condition, backoff, maxErrorRetry, true);
+    }
+
+    /**
+     * Picks a random delay between zero and an exponentially growing bound ("full jitter"), so that clients throttled
+     * at the same time do not retry at the same time.
+     *
+     * @param retriesAttempted
+     *            the number of retries already attempted
+     * @param throttled
+     *            whether the call was throttled
+     * @return the delay in milliseconds
+     */
+    static long jitteredDelay(int retriesAttempted, boolean throttled) {
+        long base = throttled ? THROTTLED_BASE_DELAY_MILLIS : BASE_DELAY_MILLIS;
+        long bound = MAX_DELAY_MILLIS;
+        if (retriesAttempted < Long.numberOfLeadingZeros(base) - 1) {
+            bound = Math.min(MAX_DELAY_MILLIS, base << retriesAttempted);
+        }
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * Tells whether an exception reports a throttled call.
+     *
+     * @param e
+     *            the exception
+     * @return true if the service throttled the call
+     */
+    static boolean isThrottlingException(Exception e) {
+        if (!(e instanceof AmazonServiceException)) {
+            return false;
+        }
+        AmazonServiceException ase = (AmazonServiceException) e;
+        return RetryUtils.isThrottlingException(ase) || REQUEST_LIMIT_EXCEEDED.equals(ase.getErrorCode());
+    }
+
+    /**
+     * Gets the name of the limiter.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the current rate.
+     *
+     * @return the rate in calls per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Gets the number of calls, retries included, that went through the limiter.
+     *
+     * @return the number of calls
+     */
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * Gets the number of throttled calls.
+     *
+     * @return the number of throttled calls
+     */
+    public long getThrottleCount() {
+        return throttles.get();
+    }
+
+    /**
+     * Gets the total time the calls waited for a permit.
+     *
+     * @return the wait time in milliseconds
+     */
+    public long getWaitTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: rate %.2f/s, %d calls, %d throttled, waited %d ms", name, getRate(),
+                getCallCount(), getThrottleCount(), getWaitTimeMillis());
+    }
+}
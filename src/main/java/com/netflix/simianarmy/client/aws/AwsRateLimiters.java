@@ -0,0 +1,110 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client.aws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.netflix.simianarmy.MonkeyConfiguration;
+
+/**
+ * The rate limiters of the AWS services, one per region and service, shared by all the AWS clients of a context so
+ * that the calls made to a service from different clients draw on the same rate.
+ */
+public class AwsRateLimiters {
+
+    /** The Constant NS. */
+    private static final String NS = "simianarmy.client.aws.rateLimit.";
+
+    /** The default highest rate, in calls per second. */
+    private static final double DEFAULT_MAX_RATE = 20;
+
+    /** The default lowest rate, in calls per second. */
+    private static final double DEFAULT_MIN_RATE = 1;
+
+    /** The default increase of the rate per successful call. */
+    private static final double DEFAULT_INCREASE = 0.1;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double increase;
+
+    private final ConcurrentMap<String, AwsRateLimiter> limiters = new ConcurrentHashMap<String, AwsRateLimiter>();
+
+    /**
+     * Instantiates the rate limiters.
+     *
+     * @param minRate
+     *            the lowest rate in calls per second
+     * @param maxRate
+     *            the highest rate in calls per second
+     * @param increase
+     *            how much each successful call raises the rate
+     */
+    public AwsRateLimiters(double minRate, double maxRate, double increase) {
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increase = increase;
+    }
+
+    /**
+     * Creates the rate limiters from the simianarmy.client.aws.rateLimit.* properties.
+     *
+     * @param config
+     *            the configuration
+     * @return the rate limiters, null if rate limiting is not enabled
+     */
+    public static AwsRateLimiters fromConfig(MonkeyConfiguration config) {
+        if (!config.getBoolOrElse(NS + "enabled", false)) {
+            return null;
+        }
+        return new AwsRateLimiters(config.getNumOrElse(NS + "minRate", DEFAULT_MIN_RATE),
+                config.getNumOrElse(NS + "maxRate", DEFAULT_MAX_RATE),
+                config.getNumOrElse(NS + "increase", DEFAULT_INCREASE));
+    }
+
+    /**
+     * Gets the rate limiter of a service in a region, creating it on first use.
+     *
+     * @param region
+     *            the region
+     * @param service
+     *            the service, e.g. ec2
+     * @return the rate limiter
+     */
+    public AwsRateLimiter get(String region, String service) {
+        String key = region + "/" + service;
+        AwsRateLimiter limiter = limiters.get(key);
+        if (limiter == null) {
+            limiters.putIfAbsent(key, new AwsRateLimiter(key, minRate, maxRate, increase));
+            limiter = limiters.get(key);
+        }
+        return limiter;
+    }
+
+    /**
+     * Gets all the rate limiters created so far, e.g. to report their metrics.
+     *
+     * @return the rate limiters
+     */
+    public List<AwsRateLimiter> all() {
+        return new ArrayList<AwsRateLimiter>(limiters.values());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client.aws;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * An Iterable over the results of a paginated AWS describe call. Pages are fetched lazily, one at a time, while
+ * iterating, so only the current page is held in memory. Every call to iterator() starts over from the first page.
+ *
+ * @param <T>
+ *            the type of the described resources
+ */
+public abstract class PaginatedIterable<T> implements Iterable<T> {
+
+    /**
+     * A page of results.
+     *
+     * @param <T>
+     *            the type of the described resources
+     */
+    public static class Page<T> {
+        private final List<T> items;
+        private final String nextToken;
+
+        /**
+         * Instantiates a new page.
+         *
+         * @param items
+         *            the resources of the page
+         * @param nextToken
+         *            the token of the next page, null or empty if this is the last page
+         */
+        public Page(List<T> items, String nextToken) {
+            this.items = items;
+            this.nextToken = nextToken;
+        }
+    }
+
+    /**
+     * Fetches a page of results.
+     *
+     * @param token
+     *            the token of the page to fetch, null for the first page
+     * @return the page
+     */
+    protected abstract Page<T> fetchPage(String token);
+
+    @Override
+    public Iterator<T> iterator() {
+        return new AbstractIterator<T>() {
+            private Iterator<T> current = Collections.<T>emptyList().iterator();
+            private String token;
+            private boolean lastPage;
+
+            @Override
+            protected T computeNext() {
+                while (!current.hasNext()) {
+                    if (lastPage) {
+                        return endOfData();
+                    }
+                    Page<T> page = fetchPage(token);
+                    token = page.nextToken;
+                    lastPage = Strings.isNullOrEmpty(token);
+                    current = page.items.iterator();
+                }
+                return current.next();
+            }
+        };
+    }
+}
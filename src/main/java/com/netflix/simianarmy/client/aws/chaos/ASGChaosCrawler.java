@@ -23,8 +23,9 @@ import java.util.List;
 
 import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
 import com.amazonaws.services.autoscaling.model.Instance;
+import com.google.common.collect.ImmutableList;
 import com.netflix.simianarmy.GroupType;
-import com.netflix.simianarmy.basic.chaos.BasicInstanceGroup;
+import com.netflix.simianarmy.basic.chaos.ImmutableInstanceGroup;
 import com.netflix.simianarmy.chaos.ChaosCrawler;
 import com.netflix.simianarmy.client.aws.AWSClient;
 
@@ -71,11 +72,12 @@ public class ASGChaosCrawler implements ChaosCrawler {
     public List<InstanceGroup> groups(String... names) {
         List<InstanceGroup> list = new LinkedList<InstanceGroup>();
         for (AutoScalingGroup asg : awsClient.describeAutoScalingGroups(names)) {
-            InstanceGroup ig = new BasicInstanceGroup(asg.getAutoScalingGroupName(), Types.ASG, awsClient.region());
+            ImmutableList.Builder<String> instances = ImmutableList.builder();
             for (Instance inst : asg.getInstances()) {
-                ig.addInstance(inst.getInstanceId());
+                instances.add(inst.getInstanceId());
             }
-            list.add(ig);
+            list.add(new ImmutableInstanceGroup(asg.getAutoScalingGroupName(), Types.ASG, awsClient.region(),
+                    instances.build()));
         }
         return list;
     }
@@ -0,0 +1,130 @@
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client.aws.chaos;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.simianarmy.chaos.ChaosCrawler;
+import com.netflix.simianarmy.client.aws.AWSClient;
+
+/**
+ * The Class MultiRegionASGChaosCrawler. Crawls the AutoScalingGroups of several regions concurrently, one
+ * ASGChaosCrawler per region, and merges the results. Every returned group carries the region it was found in.
+ */
+public class MultiRegionASGChaosCrawler implements ChaosCrawler {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiRegionASGChaosCrawler.class);
+
+    /** The per region crawlers. */
+    private final List<ASGChaosCrawler> crawlers = new ArrayList<ASGChaosCrawler>();
+
+    /** The regions, in the same order as the crawlers. */
+    private final List<String> regions = new ArrayList<String>();
+
+    /** The maximum number of regions crawled at the same time. */
+    private final int maxThreads;
+
+    /**
+     * Instantiates a new multi region chaos crawler.
+     *
+     * @param awsClients
+     *            the aws clients, one per region
+     * @param maxThreads
+     *            the maximum number of regions crawled at the same time
+     */
+    public MultiRegionASGChaosCrawler(Collection<AWSClient> awsClients, int maxThreads) {
+        Validate.notEmpty(awsClients);
+        Validate.isTrue(maxThreads > 0, "maxThreads must be positive");
+        for (AWSClient awsClient : awsClients) {
+            crawlers.add(new ASGChaosCrawler(awsClient));
+            regions.add(awsClient.region());
+        }
+        this.maxThreads = maxThreads;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public EnumSet<?> groupTypes() {
+        return EnumSet.allOf(ASGChaosCrawler.Types.class);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<InstanceGroup> groups() {
+        return groups((String[]) null);
+    }
+
+    @Override
+    public List<InstanceGroup> groups(final String... names) {
+        if (crawlers.size() == 1) {
+            return crawlers.get(0).groups(names);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxThreads, crawlers.size()));
+        try {
+            List<Future<List<InstanceGroup>>> futures = new ArrayList<Future<List<InstanceGroup>>>(crawlers.size());
+            for (final ASGChaosCrawler crawler : crawlers) {
+                futures.add(executor.submit(new Callable<List<InstanceGroup>>() {
+                    @Override
+                    public List<InstanceGroup> call() {
+                        return crawler.groups(names);
+                    }
+                }));
+            }
+            List<InstanceGroup> list = new LinkedList<InstanceGroup>();
+            for (int i = 0; i < futures.size(); i++) {
+                list.addAll(waitFor(futures.get(i), regions.get(i)));
+            }
+            return list;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the crawl of a single region, rethrowing its failure so that a partial crawl is never mistaken
+     * for a complete one.
+     */
+    private List<InstanceGroup> waitFor(Future<List<InstanceGroup>> future, String region) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while crawling region " + region, e);
+        } catch (ExecutionException e) {
+            LOGGER.error("Failed to crawl region " + region, e.getCause());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to crawl region " + region, e.getCause());
+        }
+    }
+}
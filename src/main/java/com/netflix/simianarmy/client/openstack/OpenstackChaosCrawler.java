@@ -1,22 +1,36 @@
 package com.netflix.simianarmy.client.openstack;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.jclouds.collect.IterableWithMarker;
 import org.jclouds.openstack.nova.v2_0.domain.Server;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+import org.jclouds.openstack.v2_0.domain.Resource;
 
-import com.netflix.simianarmy.basic.chaos.BasicInstanceGroup;
+import com.netflix.simianarmy.basic.chaos.ImmutableInstanceGroup;
 import com.netflix.simianarmy.chaos.ChaosCrawler;
 import com.netflix.simianarmy.client.aws.chaos.ASGChaosCrawler;
 
 /**
  * The Class OpenstackChaosCrawler. This will crawl for all available Instances
- * from a zone.
+ * from a zone. The servers are read one page at a time; if a group metadata key
+ * is set, e.g. the name of a Heat stack or server group, the servers are grouped
+ * by the value of that key, otherwise all the servers of the tenant form one group.
  */
 public class OpenstackChaosCrawler extends ASGChaosCrawler implements
         ChaosCrawler {
     private final OpenstackClient awsClient;
 
+    /** The server metadata key to group the servers by, null for one tenant-wide group. */
+    private final String groupMetadataKey;
+
     /**
      * Instantiate the OpenstackChaosCrawler (it mimics ASGChaosCrawler).
      *
@@ -24,26 +38,72 @@ public class OpenstackChaosCrawler extends ASGChaosCrawler implements
      *            An OpenstackClient
      */
     public OpenstackChaosCrawler(final OpenstackClient client) {
+        this(client, null);
+    }
+
+    /**
+     * Instantiate the OpenstackChaosCrawler grouping the servers by a metadata key.
+     *
+     * @param client
+     *            An OpenstackClient
+     * @param groupMetadataKey
+     *            the server metadata key whose value names the group of a server,
+     *            null to put all the servers of the tenant in one group
+     */
+    public OpenstackChaosCrawler(final OpenstackClient client, final String groupMetadataKey) {
         super(client);
         awsClient = client;
+        this.groupMetadataKey = groupMetadataKey;
     }
 
     /** {@inheritDoc} */
     @Override
     public List<InstanceGroup> groups(final String... names) {
-        final List<InstanceGroup> list = new LinkedList<InstanceGroup>();
         awsClient.connect();
         final String zone = awsClient.getServiceConnection().getZone();
-        final InstanceGroup ig = new BasicInstanceGroup(awsClient
-                .getServiceConnection().getTenantName(), Types.ASG, zone);
-        for (final Server server : awsClient.getNovaApi()
-                .getServerApiForZone(zone).listInDetail().concat()) {
-            ig.addInstance(server.getId());
+        final String tenantName = awsClient.getServiceConnection().getTenantName();
+        final Set<String> wanted = names == null || names.length == 0 ? null
+                : new HashSet<String>(Arrays.asList(names));
+        final ServerApi serverApi = awsClient.getNovaApi().getServerApiForZone(zone);
+        final Map<String, List<String>> instancesByGroup = new LinkedHashMap<String, List<String>>();
+
+        if (groupMetadataKey == null) {
+            // without a metadata key only the ids are needed, so the servers are listed with minimal detail
+            if (wanted == null || wanted.contains(tenantName)) {
+                for (final IterableWithMarker<? extends Resource> page : serverApi.list()) {
+                    for (final Resource server : page) {
+                        addInstance(instancesByGroup, tenantName, server.getId());
+                    }
+                }
+            }
+        } else {
+            for (final IterableWithMarker<? extends Server> page : serverApi.listInDetail()) {
+                for (final Server server : page) {
+                    String group = server.getMetadata().get(groupMetadataKey);
+                    if (group == null) {
+                        group = tenantName;
+                    }
+                    if (wanted == null || wanted.contains(group)) {
+                        addInstance(instancesByGroup, group, server.getId());
+                    }
+                }
+            }
         }
 
-        list.add(ig);
-        awsClient.disconnect();
+        final List<InstanceGroup> list = new LinkedList<InstanceGroup>();
+        for (final Map.Entry<String, List<String>> entry : instancesByGroup.entrySet()) {
+            list.add(new ImmutableInstanceGroup(entry.getKey(), Types.ASG, zone, entry.getValue()));
+        }
         return list;
     }
-}
 
+    private static void addInstance(final Map<String, List<String>> instancesByGroup, final String group,
+            final String instanceId) {
+        List<String> instances = instancesByGroup.get(group);
+        if (instances == null) {
+            instances = new ArrayList<String>();
+            instancesByGroup.put(group, instances);
+        }
+        instances.add(instanceId);
+    }
+}
@@ -2,18 +2,21 @@ package com.netflix.simianarmy.client.openstack;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.Validate;
 import org.jclouds.ContextBuilder;
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.ComputeServiceContext;
-import org.jclouds.compute.domain.ComputeMetadata;
 import org.jclouds.compute.domain.NodeMetadata;
 import org.jclouds.compute.domain.NodeMetadataBuilder;
 import org.jclouds.domain.Credentials;
@@ -43,8 +46,6 @@ import com.amazonaws.AmazonServiceException;
 import com.google.common.base.Function;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
 import com.google.common.io.ByteSource;
 import com.google.common.io.Closeables;
 import com.google.common.net.HostAndPort;
@@ -56,6 +57,7 @@ import com.google.inject.Module;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
 import com.netflix.simianarmy.CloudClient;
+import com.netflix.simianarmy.InstanceMetadata;
 import com.netflix.simianarmy.NotFoundException;
 import com.netflix.simianarmy.client.aws.AWSClient;
 
@@ -68,13 +70,28 @@ public class OpenstackClient extends AWSClient implements CloudClient {
             .getLogger(OpenstackClient.class);
     private final OpenstackServiceConnection connection;
 
-    private ComputeService compute = null;
-    private NovaApi nova = null;
+    /** Renew the Keystone token when it expires within this time. */
+    private static final long TOKEN_REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
 
-    private ComputeServiceContext context = null;
-    private Access access;
-    private CinderApi cinder = null;
-    private HashMap<String, ArrayList<String>> endpoints;
+    /** How long the listed security groups of the tenant are kept. */
+    private static final long SECURITY_GROUP_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private volatile ComputeService compute = null;
+    private volatile NovaApi nova = null;
+
+    private volatile ComputeServiceContext context = null;
+    private volatile Access access;
+    private volatile CinderApi cinder = null;
+    private volatile HashMap<String, ArrayList<String>> endpoints;
+
+    /** Authenticates against Keystone, null until connected. */
+    private Function<Credentials, Access> auth;
+
+    /** The security groups of the tenant, null until listed. */
+    private List<SecurityGroup> securityGroups;
+
+    /** When the security groups were listed. */
+    private long securityGroupsListedAt;
 
     /**
      * Create the specific Client from the given connection information.
@@ -88,61 +105,74 @@ public class OpenstackClient extends AWSClient implements CloudClient {
     }
 
     /**
-     * Connect to the Openstack services.
+     * Connect to the Openstack services. The jclouds contexts are built on the first call and kept until
+     * {@link #shutdown()}; later calls only log on to Keystone again when the token is about to expire.
      *
      * @throws AmazonServiceException
      */
-    protected void connect() throws AmazonServiceException {
+    protected synchronized void connect() throws AmazonServiceException {
         try {
-            final Iterable<Module> modules = ImmutableSet
-                    .<Module>of(new SLF4JLoggingModule());
             final String identity = connection.getTenantName() + ":"
                     + connection.getUserName(); // tenantName:userName
-            final ContextBuilder cb = ContextBuilder
-                    .newBuilder(connection.getProvider())
-                    .endpoint(connection.getUrl())
-                    // "http://141.142.237.5:5000/v2.0/"
-                    .credentials(identity, connection.getPassword())
-                    .modules(modules);
-            context = cb.buildView(ComputeServiceContext.class);
-            compute = context.getComputeService();
-            final Function<Credentials, Access> auth = context
-                    .utils()
-                    .injector()
-                    .getInstance(
-                            Key.get(new TypeLiteral<Function<Credentials, Access>>() {
-                            }));
-            access = auth.apply(new Credentials.Builder<Credentials>()
-                    .identity(identity).credential(connection.getPassword())
-                    .build());
-            nova = cb.buildApi(NovaApi.class);
-            cinder = ContextBuilder.newBuilder("openstack-cinder")
-                    .endpoint(connection.getUrl())
-                    // "http://141.142.237.5:5000/v2.0/"
-                    .credentials(identity, connection.getPassword())
-                    .modules(modules).buildApi(CinderApi.class);
-            endpoints = new HashMap<String, ArrayList<String>>();
-            for (final Service service : access) {
-                // System.out.println(" Service = " + service.getName());
-                endpoints.put(service.getName(), new ArrayList<String>());
-                for (final Endpoint endpoint : service) {
-                    endpoints.get(service.getName()).add(
-                            endpoint.getPublicURL().toString());
+            if (context == null) {
+                final Iterable<Module> modules = ImmutableSet
+                        .<Module>of(new SLF4JLoggingModule());
+                final ContextBuilder cb = ContextBuilder
+                        .newBuilder(connection.getProvider())
+                        .endpoint(connection.getUrl())
+                        // "http://141.142.237.5:5000/v2.0/"
+                        .credentials(identity, connection.getPassword())
+                        .modules(modules);
+                final ComputeServiceContext newContext = cb.buildView(ComputeServiceContext.class);
+                auth = newContext
+                        .utils()
+                        .injector()
+                        .getInstance(
+                                Key.get(new TypeLiteral<Function<Credentials, Access>>() {
+                                }));
+                nova = cb.buildApi(NovaApi.class);
+                cinder = ContextBuilder.newBuilder("openstack-cinder")
+                        .endpoint(connection.getUrl())
+                        // "http://141.142.237.5:5000/v2.0/"
+                        .credentials(identity, connection.getPassword())
+                        .modules(modules).buildApi(CinderApi.class);
+                compute = newContext.getComputeService();
+                context = newContext;
+            }
+            if (access == null || isExpiring(access)) {
+                final Access newAccess = auth.apply(new Credentials.Builder<Credentials>()
+                        .identity(identity).credential(connection.getPassword())
+                        .build());
+                final HashMap<String, ArrayList<String>> newEndpoints = new HashMap<String, ArrayList<String>>();
+                for (final Service service : newAccess) {
+                    newEndpoints.put(service.getName(), new ArrayList<String>());
+                    for (final Endpoint endpoint : service) {
+                        newEndpoints.get(service.getName()).add(
+                                endpoint.getPublicURL().toString());
+                    }
                 }
+                endpoints = newEndpoints;
+                access = newAccess;
             }
-
         } catch (final NoSuchElementException e) {
             throw new AmazonServiceException("Cannot connect to OpenStack", e);
         }
     }
 
+    private static boolean isExpiring(final Access access) {
+        final Date expires = access.getToken().getExpires();
+        return expires != null
+                && expires.getTime() - System.currentTimeMillis() < TOKEN_REFRESH_MARGIN_MILLIS;
+    }
+
     /**
-     * Disconnect from the Openstack services.
+     * Closes the Openstack services; they are connected again if the client is used after being shut down.
      */
-    protected void disconnect() {
+    @Override
+    public synchronized void shutdown() {
+        super.shutdown();
         try {
             Closeables.close(nova, true);
-            nova = null;
         } catch (final IOException e) {
             OpenstackClient.LOGGER.error("Error disconnecting nova: "
                     + e.getMessage());
@@ -153,6 +183,16 @@ public class OpenstackClient extends AWSClient implements CloudClient {
             OpenstackClient.LOGGER.error("Error disconnecting cinder: "
                     + e.getMessage());
         }
+        if (context != null) {
+            context.close();
+        }
+        nova = null;
+        cinder = null;
+        compute = null;
+        context = null;
+        access = null;
+        auth = null;
+        invalidateSecurityGroups();
     }
 
     /**
@@ -161,6 +201,7 @@ public class OpenstackClient extends AWSClient implements CloudClient {
      * @return endpoints The endpoints
      */
     public HashMap<String, ArrayList<String>> getEndpoints() {
+        connect();
         return endpoints;
     }
 
@@ -174,8 +215,9 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         } catch (final UnsupportedOperationException e) {
             throw new NotFoundException(
                     "Instance " + instanceId + " not found", e);
+        } finally {
+            jcloudsNodes.remove(getJcloudsId(instanceId));
         }
-        disconnect();
     }
 
     /** {@inheritDoc} */
@@ -202,7 +244,6 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         final VolumeApi v = (VolumeApi) nova
                 .getVolumeExtensionForZone(connection.getZone());
         v.delete(volumeId);
-        disconnect();
     }
 
     /** {@inheritDoc} */
@@ -211,7 +252,6 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         Validate.notEmpty(snapshotId);
         connect();
         cinder.getSnapshotApiForZone(connection.getZone()).delete(snapshotId);
-        disconnect();
     }
 
     /** {@inheritDoc} */
@@ -220,7 +260,6 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         Validate.notEmpty(imageId);
         connect();
         nova.getImageApiForZone(connection.getZone()).delete(imageId);
-        disconnect();
     }
 
     /** {@inheritDoc} */
@@ -248,7 +287,6 @@ public class OpenstackClient extends AWSClient implements CloudClient {
                 .listAttachmentsOnServer(instanceId)) {
             out.add(volumeAttachment.getVolumeId());
         }
-        disconnect();
         return out;
     }
 
@@ -270,7 +308,6 @@ public class OpenstackClient extends AWSClient implements CloudClient {
             OpenstackClient.LOGGER.error("Error detaching volume " + volumeId
                     + " from " + instanceId);
         }
-        disconnect();
     }
 
     /** {@inheritDoc} */
@@ -293,19 +330,41 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         Validate.notEmpty(instanceId);
         Validate.notEmpty(groupName);
         String id = null;
-        connect();
-        final SecurityGroupApi v = nova.getSecurityGroupExtensionForZone(
-                connection.getZone()).get();
-        for (final SecurityGroup group : v.list()) {
-            if (group.getName() == groupName) {
+        for (final SecurityGroup group : listSecurityGroups()) {
+            if (groupName.equals(group.getName())) {
                 id = group.getId();
                 break;
             }
         }
-        disconnect();
         return id;
     }
 
+    /**
+     * List the security groups of the tenant. The list is kept for a few minutes
+     * so that looking up groups does not list them all on every call.
+     *
+     * @return the security groups
+     */
+    protected synchronized List<SecurityGroup> listSecurityGroups() {
+        final long now = System.currentTimeMillis();
+        if (securityGroups == null
+                || now - securityGroupsListedAt > SECURITY_GROUP_TTL_MILLIS) {
+            connect();
+            final SecurityGroupApi v = getNovaApi().getSecurityGroupExtensionForZone(
+                    connection.getZone()).get();
+            securityGroups = new ArrayList<SecurityGroup>(v.list().toList());
+            securityGroupsListedAt = now;
+        }
+        return securityGroups;
+    }
+
+    /**
+     * Drop the listed security groups; they are listed again on the next lookup.
+     */
+    protected synchronized void invalidateSecurityGroups() {
+        securityGroups = null;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String createSecurityGroup(final String instanceId,
@@ -313,23 +372,23 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         Validate.notEmpty(instanceId);
         Validate.notEmpty(groupName);
         Validate.notEmpty(description);
-        connect();
-        final SecurityGroupApi v = nova.getSecurityGroupExtensionForZone(
-                connection.getZone()).get();
         OpenstackClient.LOGGER.info(String.format(
                 "Creating OpenStack security group %s.", groupName));
-        for (final SecurityGroup group : v.list()) {
+        for (final SecurityGroup group : listSecurityGroups()) {
             if (group.getName().startsWith(groupName)) {
                 addSecurityGroupToInstanceByName(instanceId, groupName);
                 return group.getId();
             }
         }
+        connect();
+        final SecurityGroupApi v = getNovaApi().getSecurityGroupExtensionForZone(
+                connection.getZone()).get();
         final SecurityGroup result = v.createWithDescription(groupName,
                 description);
+        invalidateSecurityGroups();
         // Add security group to the instance
         addSecurityGroupToInstanceByName(instanceId, groupName);
 
-        disconnect();
         return result.getId();
     }
 
@@ -341,57 +400,49 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         Validate.notEmpty(groupIds);
         connect();
 
-        // Get all security groups for instance
-        final ServerWithSecurityGroups serverWithSG = nova
-                .getServerWithSecurityGroupsExtensionForZone(
-                        connection.getZone()).get().get(instanceId);
-        // Remove all security groups from the instance
-        for (final String secGroup : serverWithSG.getSecurityGroupNames()) {
-            removeSecurityGroupFromInstanceByName(instanceId, secGroup);
-        }
-        // Add specified groups to the instance
-
+        // Resolve the requested groups to names
+        final Set<String> wanted = new LinkedHashSet<String>();
         for (final String groupId : groupIds) {
-            addSecurityGroupToInstanceById(instanceId, groupId);
+            wanted.add(getSecurityGroupName(groupId));
         }
-    }
-
-    /**
-     * Remove an instance from a security group (This assumes you have already
-     * done a call to connect()).
-     *
-     * @param instanceId
-     *            Instance identifier
-     * @param groupName
-     *            Group name
-     */
-    private void removeSecurityGroupFromInstanceByName(final String instanceId,
-            final String groupName) {
-        final ServerWithSecurityGroups serverWithSG = nova
+        // Get all security groups for instance, once
+        final ServerWithSecurityGroups serverWithSG = getNovaApi()
                 .getServerWithSecurityGroupsExtensionForZone(
                         connection.getZone()).get().get(instanceId);
-        if (!serverWithSG.getSecurityGroupNames().contains(groupName)) {
-            return;
+        final Set<String> current = serverWithSG.getSecurityGroupNames();
+        // Only change the groups that differ
+        for (final String secGroup : current) {
+            if (!wanted.contains(secGroup)) {
+                modifySecurityGroupOnInstanceByName(instanceId, secGroup,
+                        "removeSecurityGroup");
+            }
+        }
+        for (final String secGroup : wanted) {
+            if (!current.contains(secGroup)) {
+                modifySecurityGroupOnInstanceByName(instanceId, secGroup,
+                        "addSecurityGroup");
+            }
         }
-        modifySecurityGroupOnInstanceByName(instanceId, groupName,
-                "removeSecurityGroup");
     }
 
     /**
-     * Add an instance to a security group (This assumes you have already done a
-     * call to connect()).
+     * Get the name of a security group, looking it up in the listed groups
+     * first (This assumes you have already done a call to connect()).
      *
-     * @param instanceId
-     *            Instance identifier
      * @param groupId
      *            Group identifier
+     * @return the group name
      */
-    private void addSecurityGroupToInstanceById(final String instanceId,
-            final String groupId) {
-        final SecurityGroupApi v = nova.getSecurityGroupExtensionForZone(
+    private String getSecurityGroupName(final String groupId) {
+        for (final SecurityGroup group : listSecurityGroups()) {
+            if (groupId.equals(group.getId())) {
+                return group.getName();
+            }
+        }
+        // created since the groups were listed
+        final SecurityGroupApi v = getNovaApi().getSecurityGroupExtensionForZone(
                 connection.getZone()).get();
-        final String groupName = v.get(groupId).getName();
-        addSecurityGroupToInstanceByName(instanceId, groupName);
+        return v.get(groupId).getName();
     }
 
     /**
@@ -405,7 +456,7 @@ public class OpenstackClient extends AWSClient implements CloudClient {
      */
     private void addSecurityGroupToInstanceByName(final String instanceId,
             final String groupName) {
-        final ServerWithSecurityGroups serverWithSG = nova
+        final ServerWithSecurityGroups serverWithSG = getNovaApi()
                 .getServerWithSecurityGroupsExtensionForZone(
                         connection.getZone()).get().get(instanceId);
         if (serverWithSG.getSecurityGroupNames().contains(groupName)) {
@@ -417,7 +468,7 @@ public class OpenstackClient extends AWSClient implements CloudClient {
 
     /**
      * Change the security groups of an instance (This assumes you have already
-     * done a call to connect()).
+     * done a call to connect()). Abstracted to aid testing.
      *
      * @param instanceId
      *            Instance identifier
@@ -426,7 +477,7 @@ public class OpenstackClient extends AWSClient implements CloudClient {
      * @param operation
      *            Operation that has to be performed on the instance
      */
-    private void modifySecurityGroupOnInstanceByName(final String instanceId,
+    protected void modifySecurityGroupOnInstanceByName(final String instanceId,
             final String groupName, final String operation) {
         final String endpoint = (String) endpoints.get("nova").toArray()[0];
 
@@ -466,7 +517,7 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         final ComputeService computeService = getJcloudsComputeService();
 
         final String jcloudsId = getJcloudsId(instanceId);
-        NodeMetadata node = getJcloudsNode(computeService, jcloudsId);
+        NodeMetadata node = jcloudsNodes.get(computeService, jcloudsId);
 
         node = NodeMetadataBuilder.fromNodeMetadata(node)
                 .credentials(credentials).build();
@@ -478,48 +529,9 @@ public class OpenstackClient extends AWSClient implements CloudClient {
                         node.getPrivateAddresses().toArray()[0].toString(),
                         node.getLoginPort()), credentials));
         ssh.connect();
-        disconnect();
         return ssh;
     }
 
-    /**
-     * Get meta-data for Node.
-     *
-     * @param computeService
-     *            Openstack Nova ComputeService
-     * @param jcloudsId
-     *            Instance identifier
-     * @return NodeMetaData
-     */
-    private NodeMetadata getJcloudsNode(final ComputeService computeService,
-            final String jcloudsId) {
-        // Work around a jclouds bug / documentation issue...
-        // TODO: Figure out what's broken, and eliminate this function
-
-        // This should work (?):
-        // Set<NodeMetadata> nodes =
-        // computeService.listNodesByIds(Collections.singletonList(jcloudsId));
-
-        final Set<NodeMetadata> nodes = Sets.newHashSet();
-        for (final ComputeMetadata n : computeService.listNodes()) {
-            if (jcloudsId.equals(n.getId())) {
-                nodes.add((NodeMetadata) n);
-            }
-        }
-
-        if (nodes.isEmpty()) {
-            OpenstackClient.LOGGER.warn("Unable to find jclouds node: {}",
-                    jcloudsId);
-            for (final ComputeMetadata n : computeService.listNodes()) {
-                OpenstackClient.LOGGER.info("Did find node: {}", n);
-            }
-            throw new IllegalStateException(
-                    "Unable to find node using jclouds: " + jcloudsId);
-        }
-        final NodeMetadata node = Iterables.getOnlyElement(nodes);
-        return node;
-    }
-
     /** {@inheritDoc} */
     @Override
     public boolean canChangeInstanceSecurityGroups(final String instanceId) {
@@ -528,6 +540,19 @@ public class OpenstackClient extends AWSClient implements CloudClient {
         return true;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, InstanceMetadata> describeInstanceMetadata(final String... instanceIds) {
+        // Openstack doesn't tell the root volume apart and always allows changing the security groups.
+        final Map<String, InstanceMetadata> metadata = new HashMap<String, InstanceMetadata>();
+        for (final String instanceId : instanceIds) {
+            final List<String> volumeIds = listAttachedVolumes(instanceId, true);
+            metadata.put(instanceId, new InstanceMetadata(instanceId, volumeIds, null, null,
+                    Collections.<String>emptyList(), true));
+        }
+        return metadata;
+    }
+
     /**
      * Get NovaApi object.
      *
@@ -25,6 +25,7 @@ public class OpenstackContext extends BasicChaosMonkeyContext {
                 config);
         client = new OpenstackClient(conn);
         setCloudClient(client);
-        setChaosCrawler(new OpenstackChaosCrawler(client));
+        setChaosCrawler(new OpenstackChaosCrawler(client,
+                config.getStr("simianarmy.client.openstack.groupMetadataKey")));
     }
 }
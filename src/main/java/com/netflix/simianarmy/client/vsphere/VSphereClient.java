@@ -16,10 +16,17 @@
 package com.netflix.simianarmy.client.vsphere;
 
 import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.netflix.simianarmy.InstanceMetadata;
 import com.netflix.simianarmy.client.aws.AWSClient;
 import com.vmware.vim25.mo.VirtualMachine;
 
@@ -48,26 +55,18 @@ public class VSphereClient extends AWSClient {
     @Override
     public List<AutoScalingGroup> describeAutoScalingGroups(String... names) {
         final VSphereGroups groups = new VSphereGroups();
+        Set<String> groupNames = null;
+        if (names != null && names.length > 0) {
+            groupNames = new HashSet<String>(Arrays.asList(names));
+        }
 
-        try {
-            connection.connect();
-
-            for (VirtualMachine virtualMachine : connection.describeVirtualMachines()) {
-                String instanceId = virtualMachine.getName();
-                String groupName = virtualMachine.getParent().getName();
-
-                boolean shouldAddNamedGroup = true;
-                if (names != null) {
-                    // TODO need to implement this feature!!!
-                    throw new RuntimeException("This feature (selecting groups by name) is not implemented yet");
-                }
-
-                if (shouldAddNamedGroup) {
-                    groups.addInstance(instanceId, groupName);
-                }
+        connection.connect();
+        for (Map.Entry<String, String> virtualMachine : connection.describeVirtualMachineFolders().entrySet()) {
+            String instanceId = virtualMachine.getKey();
+            String groupName = virtualMachine.getValue();
+            if (groupNames == null || groupNames.contains(groupName)) {
+                groups.addInstance(instanceId, groupName);
             }
-        } finally {
-            connection.disconnect();
         }
 
         return groups.asList();
@@ -86,8 +85,28 @@ public class VSphereClient extends AWSClient {
             this.terminationStrategy.terminate(virtualMachine);
         } catch (RemoteException e) {
             throw new AmazonServiceException("cannot destroy & recreate " + instanceId, e);
-        } finally {
-            connection.disconnect();
         }
     }
+
+    /**
+     * Logs out of VSphere; the session is kept open between calls until then.
+     */
+    @Override
+    public synchronized void shutdown() {
+        super.shutdown();
+        connection.disconnect();
+    }
+
+    /**
+     * VirtualMachines have neither EBS volumes nor security groups.
+     */
+    @Override
+    public Map<String, InstanceMetadata> describeInstanceMetadata(String... instanceIds) {
+        Map<String, InstanceMetadata> metadata = new HashMap<String, InstanceMetadata>();
+        for (String instanceId : instanceIds) {
+            metadata.put(instanceId, new InstanceMetadata(instanceId, Collections.<String>emptyList(), null, null,
+                    Collections.<String>emptyList(), false));
+        }
+        return metadata;
+    }
 }
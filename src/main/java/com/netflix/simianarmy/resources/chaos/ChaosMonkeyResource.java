@@ -45,8 +45,10 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.netflix.simianarmy.AbstractMonkeyRecorder;
 import com.netflix.simianarmy.FeatureNotEnabledException;
 import com.netflix.simianarmy.InstanceGroupNotFoundException;
+import com.netflix.simianarmy.MonkeyRecorder;
 import com.netflix.simianarmy.MonkeyRecorder.Event;
 import com.netflix.simianarmy.MonkeyRunner;
 import com.netflix.simianarmy.NotFoundException;
@@ -128,28 +130,45 @@ public class ChaosMonkeyResource {
             date = now.getTime();
         }
 
-        List<Event> evts = monkey.context().recorder()
-                .findEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION, query, date);
-
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JsonGenerator gen = JSON_FACTORY.createJsonGenerator(baos, JsonEncoding.UTF8);
+        final JsonGenerator gen = JSON_FACTORY.createJsonGenerator(baos, JsonEncoding.UTF8);
         gen.writeStartArray();
-        for (Event evt : evts) {
-            gen.writeStartObject();
-            gen.writeStringField("monkeyType", evt.monkeyType().name());
-            gen.writeStringField("eventType", evt.eventType().name());
-            gen.writeNumberField("eventTime", evt.eventTime().getTime());
-            gen.writeStringField("region", evt.region());
-            for (Map.Entry<String, String> pair : evt.fields().entrySet()) {
-                gen.writeStringField(pair.getKey(), pair.getValue());
-            }
-            gen.writeEndObject();
+        // write the events as they are fetched rather than collecting them all first
+        final IOException[] failure = new IOException[1];
+        AbstractMonkeyRecorder.visitEvents(monkey.context().recorder(), ChaosMonkey.Type.CHAOS,
+                ChaosMonkey.EventTypes.CHAOS_TERMINATION, query, date, 0, MonkeyRecorder.Order.NEWEST_FIRST,
+                new MonkeyRecorder.EventVisitor() {
+                    @Override
+                    public boolean visit(Event evt) {
+                        try {
+                            writeEvent(gen, evt);
+                            return true;
+                        } catch (IOException e) {
+                            failure[0] = e;
+                            return false;
+                        }
+                    }
+                });
+        if (failure[0] != null) {
+            throw failure[0];
         }
         gen.writeEndArray();
         gen.close();
         return Response.status(Response.Status.OK).entity(baos.toString("UTF-8")).build();
     }
 
+    private static void writeEvent(JsonGenerator gen, Event evt) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("monkeyType", evt.monkeyType().name());
+        gen.writeStringField("eventType", evt.eventType().name());
+        gen.writeNumberField("eventTime", evt.eventTime().getTime());
+        gen.writeStringField("region", evt.region());
+        for (Map.Entry<String, String> pair : evt.fields().entrySet()) {
+            gen.writeStringField(pair.getKey(), pair.getValue());
+        }
+        gen.writeEndObject();
+    }
+
     /**
      * POST /api/v1/chaos will try a add a new event with the information in the url context,
      * ignoring the monkey probability and max termination configurations, for a specific instance group.
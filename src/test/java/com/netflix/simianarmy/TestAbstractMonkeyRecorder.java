@@ -0,0 +1,78 @@
+// CHECKSTYLE IGNORE Javadoc
+// CHECKSTYLE IGNORE MagicNumberCheck
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.netflix.simianarmy.MonkeyRecorder.Event;
+import com.netflix.simianarmy.basic.BasicRecorderEvent;
+import com.netflix.simianarmy.chaos.ChaosMonkey;
+
+public class TestAbstractMonkeyRecorder {
+
+    private static Event event(String id, long time) {
+        return new BasicRecorderEvent(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION, "region", id,
+                time);
+    }
+
+    @Test
+    public void testVisitEventsOfPlainRecorder() {
+        // a recorder written against the interface alone, without the visitEvents query
+        MonkeyRecorder recorder = mock(MonkeyRecorder.class);
+        Map<String, String> query = Collections.emptyMap();
+        Date after = new Date(0);
+        when(recorder.findEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION, query, after))
+                .thenReturn(Arrays.asList(event("i-2", 2), event("i-3", 3), event("i-1", 1)));
+
+        final List<String> visited = new ArrayList<String>();
+        AbstractMonkeyRecorder.visitEvents(recorder, ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, after, 2, MonkeyRecorder.Order.NEWEST_FIRST, new MonkeyRecorder.EventVisitor() {
+                    @Override
+                    public boolean visit(Event evt) {
+                        visited.add(evt.id());
+                        return true;
+                    }
+                });
+        Assert.assertEquals(visited, Arrays.asList("i-3", "i-2"));
+    }
+
+    @Test
+    public void testCountEventsOfPlainRecorder() {
+        MonkeyRecorder recorder = mock(MonkeyRecorder.class);
+        Map<String, String> query = Collections.emptyMap();
+        Date after = new Date(0);
+        when(recorder.findEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION, query, after))
+                .thenReturn(Arrays.asList(event("i-1", 1), event("i-2", 2)));
+
+        Assert.assertEquals(AbstractMonkeyRecorder.countEvents(recorder, ChaosMonkey.Type.CHAOS,
+                ChaosMonkey.EventTypes.CHAOS_TERMINATION, query, after), 2);
+    }
+}
@@ -184,7 +184,7 @@ public class TestMonkeyContext implements Monkey.Context {
         };
     }
 
-    private final MonkeyRecorder recorder = new MonkeyRecorder() {
+    private final MonkeyRecorder recorder = new AbstractMonkeyRecorder() {
         private final List<Event> events = new LinkedList<Event>();
 
         @Override
@@ -213,13 +213,23 @@ public class TestMonkeyContext implements Monkey.Context {
             // used from ChaosMonkey
             List<Event> evts = new LinkedList<Event>();
             for (Event evt : events) {
-                if (query.get("groupName").equals(evt.field("groupName")) && evt.monkeyType() == mkeyType
+                if (matches(evt, query) && evt.monkeyType() == mkeyType
                         && evt.eventType() == eventType && evt.eventTime().after(after)) {
                     evts.add(evt);
                 }
             }
             return evts;
         }
+
+        private boolean matches(Event evt, Map<String, String> query) {
+            for (Map.Entry<String, String> pair : query.entrySet()) {
+                String value = "region".equals(pair.getKey()) ? evt.region() : evt.field(pair.getKey());
+                if (!pair.getValue().equals(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
     };
 
     @Override
@@ -19,7 +19,10 @@
 package com.netflix.simianarmy.aws;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -27,20 +30,25 @@ import static org.mockito.Mockito.when;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.mockito.ArgumentCaptor;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.simpledb.AmazonSimpleDB;
 import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.BatchPutAttributesRequest;
 import com.amazonaws.services.simpledb.model.Item;
 import com.amazonaws.services.simpledb.model.PutAttributesRequest;
 import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.amazonaws.services.simpledb.model.ReplaceableItem;
 import com.amazonaws.services.simpledb.model.SelectRequest;
 import com.amazonaws.services.simpledb.model.SelectResult;
 import com.netflix.simianarmy.EventType;
@@ -125,6 +133,70 @@ public class TestSimpleDBRecorder extends SimpleDBRecorder {
         Assert.assertEquals(map.size(), 0);
     }
 
+    @Test
+    public void testAsyncRecordEvent() {
+        TestSimpleDBRecorder recorder = new TestSimpleDBRecorder();
+        AmazonServiceException throttled = new AmazonServiceException("slow down");
+        throttled.setStatusCode(503);
+        doThrow(throttled).doNothing().when(recorder.sdbMock).batchPutAttributes(any(BatchPutAttributesRequest.class));
+        recorder.startAsyncWriter(100);
+
+        for (int i = 0; i < 30; i++) {
+            recorder.recordEvent(recorder.newEvent(Type.MONKEY, EventTypes.EVENT, "region", "testId" + i));
+        }
+        recorder.close();
+
+        ArgumentCaptor<BatchPutAttributesRequest> arg = ArgumentCaptor.forClass(BatchPutAttributesRequest.class);
+        verify(recorder.sdbMock, atLeastOnce()).batchPutAttributes(arg.capture());
+        verify(recorder.sdbMock, never()).putAttributes(any(PutAttributesRequest.class));
+        // the throttled batch is sent again, so only count each item name once
+        Map<String, ReplaceableItem> items = new HashMap<String, ReplaceableItem>();
+        for (BatchPutAttributesRequest req : arg.getAllValues()) {
+            Assert.assertEquals(req.getDomainName(), "DOMAIN");
+            Assert.assertTrue(req.getItems().size() <= MAX_BATCH_PUT_ITEMS);
+            for (ReplaceableItem item : req.getItems()) {
+                items.put(item.getName(), item);
+            }
+        }
+        Assert.assertEquals(items.size(), 30);
+
+        // once closed, events are written as they are recorded
+        recorder.recordEvent(recorder.newEvent(Type.MONKEY, EventTypes.EVENT, "region", "testId30"));
+        verify(recorder.sdbMock).putAttributes(any(PutAttributesRequest.class));
+    }
+
+    @Test
+    public void testAsyncRecordEventWriteFailure() {
+        TestSimpleDBRecorder recorder = new TestSimpleDBRecorder();
+        AmazonServiceException down = new AmazonServiceException("internal error");
+        down.setStatusCode(500);
+        doThrow(down).when(recorder.sdbMock).batchPutAttributes(any(BatchPutAttributesRequest.class));
+        // the 3 events written one at a time by the writer, then the first one written again by the flush
+        doThrow(down).doThrow(down).doThrow(down).doThrow(down).doNothing()
+                .when(recorder.sdbMock).putAttributes(any(PutAttributesRequest.class));
+        recorder.startAsyncWriter(100);
+
+        for (int i = 0; i < 3; i++) {
+            recorder.recordEvent(recorder.newEvent(Type.MONKEY, EventTypes.EVENT, "region", "testId" + i));
+        }
+        try {
+            recorder.flush();
+            Assert.fail("expected the failed writes to be reported");
+        } catch (AmazonServiceException e) {
+            Assert.assertSame(e, down);
+        }
+        // the failed events are kept and written by the close
+        recorder.close();
+
+        ArgumentCaptor<PutAttributesRequest> arg = ArgumentCaptor.forClass(PutAttributesRequest.class);
+        verify(recorder.sdbMock, times(7)).putAttributes(arg.capture());
+        Set<String> written = new HashSet<String>();
+        for (PutAttributesRequest req : arg.getAllValues().subList(4, 7)) {
+            written.add(req.getItemName().split("-")[1]);
+        }
+        Assert.assertEquals(written, new HashSet<String>(Arrays.asList("testId0", "testId1", "testId2")));
+    }
+
     private SelectResult mkSelectResult(String id) {
         Item item = new Item();
         List<Attribute> attrs = new LinkedList<Attribute>();
@@ -197,6 +269,61 @@ public class TestSimpleDBRecorder extends SimpleDBRecorder {
         Assert.assertEquals(req.getSelectExpression(), sb.toString());
     }
 
+    @Test
+    public void testVisitEventsWithLimit() {
+        TestSimpleDBRecorder recorder = new TestSimpleDBRecorder();
+        SelectResult result1 = mkSelectResult("testId1");
+        result1.setNextToken("nextToken");
+        when(recorder.sdbMock.select(any(SelectRequest.class))).thenReturn(result1);
+
+        final List<Event> visited = new LinkedList<Event>();
+        recorder.visitEvents(Type.MONKEY, null, new HashMap<String, String>(), new Date(0), 1, Order.OLDEST_FIRST,
+                new EventVisitor() {
+                    @Override
+                    public boolean visit(Event evt) {
+                        visited.add(evt);
+                        return true;
+                    }
+                });
+
+        Assert.assertEquals(visited.size(), 1);
+        // the limit was reached on the first page, so the next one is never fetched
+        ArgumentCaptor<SelectRequest> arg = ArgumentCaptor.forClass(SelectRequest.class);
+        verify(recorder.sdbMock, times(1)).select(arg.capture());
+        Assert.assertEquals(arg.getValue().getSelectExpression(), "select * from `DOMAIN` where region = 'region'"
+                + " and monkeyType = 'MONKEY|com.netflix.simianarmy.aws.TestSimpleDBRecorder$Type'"
+                + " and eventTime > '0' order by eventTime asc limit 1");
+    }
+
+    @Test
+    public void testCountEvents() {
+        TestSimpleDBRecorder recorder = new TestSimpleDBRecorder();
+        SelectResult result1 = mkCountResult("2");
+        result1.setNextToken("nextToken");
+        when(recorder.sdbMock.select(any(SelectRequest.class))).thenReturn(result1).thenReturn(mkCountResult("3"));
+
+        Map<String, String> query = new LinkedHashMap<String, String>();
+        query.put("groupName", "testGroup");
+        Assert.assertEquals(recorder.countEvents(Type.MONKEY, EventTypes.EVENT, query, new Date(0)), 5);
+
+        ArgumentCaptor<SelectRequest> arg = ArgumentCaptor.forClass(SelectRequest.class);
+        verify(recorder.sdbMock, times(2)).select(arg.capture());
+        Assert.assertEquals(arg.getValue().getSelectExpression(), "select count(*) from `DOMAIN`"
+                + " where region = 'region' and groupName = 'testGroup'"
+                + " and monkeyType = 'MONKEY|com.netflix.simianarmy.aws.TestSimpleDBRecorder$Type'"
+                + " and eventType = 'EVENT|com.netflix.simianarmy.aws.TestSimpleDBRecorder$EventTypes'"
+                + " and eventTime > '0'");
+    }
+
+    private SelectResult mkCountResult(String count) {
+        Item item = new Item();
+        item.setName("Domain");
+        item.setAttributes(Arrays.asList(new Attribute("Count", count)));
+        SelectResult result = new SelectResult();
+        result.setItems(Arrays.asList(item));
+        return result;
+    }
+
     void verifyEvents(List<Event> events) {
         Assert.assertEquals(events.size(), 2);
 
@@ -0,0 +1,83 @@
+// CHECKSTYLE IGNORE Javadoc
+// CHECKSTYLE IGNORE MagicNumberCheck
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.basic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestFileWatchingConfiguration {
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testLaterFilesOverride() throws IOException {
+        File first = File.createTempFile("first", ".properties");
+        File second = File.createTempFile("second", ".properties");
+        first.deleteOnExit();
+        second.deleteOnExit();
+        write(first, "a = 1\nb = first\n");
+        write(second, "b = second\n");
+
+        FileWatchingConfiguration cfg = new FileWatchingConfiguration(
+                Arrays.asList(first.toURI().toURL(), second.toURI().toURL()));
+        try {
+            Assert.assertEquals(cfg.getNumOrElse("a", 0), 1.0);
+            Assert.assertEquals(cfg.getStr("b"), "second");
+            Assert.assertNull(cfg.getStr("c"));
+        } finally {
+            cfg.close();
+        }
+    }
+
+    @Test
+    public void testPicksUpChanges() throws Exception {
+        File file = File.createTempFile("watched", ".properties");
+        file.deleteOnExit();
+        write(file, "simianarmy.chaos.ASG.probability = 1.0\n");
+
+        URL url = file.toURI().toURL();
+        FileWatchingConfiguration cfg = new FileWatchingConfiguration(Arrays.asList(url));
+        try {
+            Assert.assertEquals(cfg.getNumOrElse("simianarmy.chaos.ASG.probability", 0), 1.0);
+            write(file, "simianarmy.chaos.ASG.probability = 0.5\n");
+            long deadline = System.currentTimeMillis() + 30000;
+            while (cfg.getNumOrElse("simianarmy.chaos.ASG.probability", 0) != 0.5
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(cfg.getNumOrElse("simianarmy.chaos.ASG.probability", 0), 0.5);
+        } finally {
+            cfg.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+// CHECKSTYLE IGNORE Javadoc
+// CHECKSTYLE IGNORE MagicNumberCheck
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.basic;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.mapdb.Fun;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.netflix.simianarmy.MonkeyRecorder;
+import com.netflix.simianarmy.MonkeyRecorder.Event;
+import com.netflix.simianarmy.chaos.ChaosMonkey;
+
+public class TestLocalDbRecorder {
+
+    private Event record(LocalDbRecorder recorder, ChaosMonkey.EventTypes eventType, String region, String group,
+            long time) {
+        Event evt = new LocalDbRecorder.MapDbRecorderEvent(ChaosMonkey.Type.CHAOS, eventType, region,
+                "i-" + time, time);
+        evt.addField("groupName", group);
+        recorder.recordEvent(evt);
+        return evt;
+    }
+
+    @Test
+    public void testFindByField() {
+        LocalDbRecorder recorder = new LocalDbRecorder(new BasicConfiguration(new Properties()));
+        long now = System.currentTimeMillis();
+        Event first = record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION, "us-east-1", "findByField1", now);
+        record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION, "us-east-1", "findByField2", now + 1);
+        record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION_SKIPPED, "us-east-1", "findByField1", now + 2);
+        Event last = record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION, "us-west-2", "findByField1", now + 3);
+
+        Map<String, String> query = new HashMap<String, String>();
+        query.put("groupName", "findByField1");
+        List<Event> evts = recorder.findEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(now - 1));
+        Assert.assertEquals(evts.size(), 2);
+        Assert.assertEquals(evts.get(0).id(), first.id());
+        Assert.assertEquals(evts.get(1).id(), last.id());
+
+        query.put("region", "us-west-2");
+        evts = recorder.findEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(now - 1));
+        Assert.assertEquals(evts.size(), 1);
+        Assert.assertEquals(evts.get(0).id(), last.id());
+
+        evts = recorder.findEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(now + 4));
+        Assert.assertTrue(evts.isEmpty());
+
+        query.clear();
+        query.put("groupName", "findByField1");
+        evts = recorder.findEvents(ChaosMonkey.Type.CHAOS, query, new Date(now - 1));
+        Assert.assertEquals(evts.size(), 3);
+
+        // counted from the index alone, then with an extra filter checked on the events
+        Assert.assertEquals(recorder.countEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(now - 1)), 2);
+        query.put("region", "us-east-1");
+        Assert.assertEquals(recorder.countEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(now - 1)), 1);
+    }
+
+    @Test
+    public void testGroupCommit() {
+        Properties props = new Properties();
+        props.setProperty("simianarmy.recorder.localdb.group_commit", "true");
+        props.setProperty("simianarmy.recorder.localdb.commit_batch_size", "1000");
+        props.setProperty("simianarmy.recorder.localdb.commit_interval_ms", "3600000");
+        LocalDbRecorder recorder = new LocalDbRecorder(new BasicConfiguration(props));
+        LocalDbRecorder reader = new LocalDbRecorder(new BasicConfiguration(new Properties()));
+        long now = System.currentTimeMillis();
+        record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION, "us-east-1", "groupCommit", now);
+        record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION, "us-east-1", "groupCommit", now + 1);
+
+        Map<String, String> query = new HashMap<String, String>();
+        query.put("groupName", "groupCommit");
+        // still pending, so only visible to the recorder that queued them
+        Assert.assertTrue(reader.findEvents(ChaosMonkey.Type.CHAOS, query, new Date(now - 1)).isEmpty());
+        Assert.assertEquals(recorder.findEvents(ChaosMonkey.Type.CHAOS, query, new Date(now - 1)).size(), 2);
+
+        record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION, "us-east-1", "groupCommit", now + 2);
+        recorder.close();
+        Assert.assertEquals(reader.findEvents(ChaosMonkey.Type.CHAOS, query, new Date(now - 1)).size(), 3);
+    }
+
+    @Test
+    public void testVisitNewestFirst() {
+        LocalDbRecorder recorder = new LocalDbRecorder(new BasicConfiguration(new Properties()));
+        long now = System.currentTimeMillis();
+        record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION, "us-east-1", "visitNewestFirst", now);
+        Event newest = record(recorder, ChaosMonkey.EventTypes.CHAOS_TERMINATION_SKIPPED, "us-east-1",
+                "visitNewestFirst", now + 1);
+
+        Map<String, String> query = new HashMap<String, String>();
+        query.put("groupName", "visitNewestFirst");
+        final List<Event> visited = new ArrayList<Event>();
+        recorder.visitEvents(ChaosMonkey.Type.CHAOS, null, query, new Date(now - 1), 1,
+                MonkeyRecorder.Order.NEWEST_FIRST, new MonkeyRecorder.EventVisitor() {
+                    @Override
+                    public boolean visit(Event evt) {
+                        visited.add(evt);
+                        return true;
+                    }
+                });
+        Assert.assertEquals(visited.size(), 1);
+        Assert.assertEquals(visited.get(0).id(), newest.id());
+    }
+
+    @Test
+    public void testGroupCountReadsNoEvents() {
+        final int[] read = new int[1];
+        LocalDbRecorder recorder = new LocalDbRecorder(new BasicConfiguration(new Properties())) {
+            @Override
+            protected Event getEvent(Fun.Tuple2<Long, Long> id) {
+                read[0]++;
+                return super.getEvent(id);
+            }
+        };
+        long now = System.currentTimeMillis();
+        recordTermination(recorder, "us-east-1", "ASG", "groupCount", now);
+        recordTermination(recorder, "us-east-1", "ASG", "groupCount", now + 1);
+        recordTermination(recorder, "us-west-2", "ASG", "groupCount", now + 2);
+        recordTermination(recorder, "us-east-1", "CLOUDFORMATION", "groupCount", now + 3);
+        recordTermination(recorder, "us-east-1", "ASG", "groupCount2", now + 4);
+
+        // the filters the chaos monkey counts its terminations with
+        Map<String, String> query = new HashMap<String, String>();
+        query.put("groupType", "ASG");
+        query.put("groupName", "groupCount");
+        query.put("region", "us-east-1");
+        Assert.assertEquals(recorder.countEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(now - 1)), 2);
+        Assert.assertEquals(recorder.countEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(now + 1)), 1);
+        Assert.assertEquals(read[0], 0);
+
+        // the same filters found through the same index range
+        Assert.assertEquals(recorder.findEvents(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                query, new Date(now - 1)).size(), 2);
+        Assert.assertEquals(read[0], 2);
+    }
+
+    private void recordTermination(LocalDbRecorder recorder, String region, String groupType, String group,
+            long time) {
+        Event evt = new LocalDbRecorder.MapDbRecorderEvent(ChaosMonkey.Type.CHAOS,
+                ChaosMonkey.EventTypes.CHAOS_TERMINATION, region, "i-" + time, time);
+        evt.addField("groupType", groupType);
+        evt.addField("groupName", group);
+        recorder.recordEvent(evt);
+    }
+}
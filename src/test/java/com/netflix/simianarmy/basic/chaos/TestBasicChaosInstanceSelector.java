@@ -23,6 +23,8 @@ import java.util.List;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 
 import com.netflix.simianarmy.GroupType;
 import com.netflix.simianarmy.chaos.ChaosInstanceSelector;
@@ -153,4 +155,68 @@ public class TestBasicChaosInstanceSelector {
             Assert.assertEquals(selected.size(), group.instances().size());
         }
     }
+
+    @Test
+    public void testSeededSelection() {
+        ChaosInstanceSelector first = new BasicChaosInstanceSelector(42L);
+        ChaosInstanceSelector second = new BasicChaosInstanceSelector(42L);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(first.select(group, 3.5), second.select(group, 3.5));
+        }
+    }
+
+    @Test
+    public void testSeededSelectionIgnoresGroupOrder() {
+        InstanceGroup other = new BasicInstanceGroup("OtherGroup", Types.TEST, "region");
+        for (String instance : group.instances()) {
+            other.addInstance(instance);
+        }
+        ChaosInstanceSelector first = new BasicChaosInstanceSelector(42L);
+        ChaosInstanceSelector second = new BasicChaosInstanceSelector(42L);
+        for (int i = 0; i < 100; i++) {
+            // as if the groups were selected on different threads, in a different order on every run
+            Collection<String> firstGroup = first.select(group, 3.5);
+            Collection<String> firstOther = first.select(other, 3.5);
+            Collection<String> secondOther = second.select(other, 3.5);
+            Collection<String> secondGroup = second.select(group, 3.5);
+            Assert.assertEquals(firstGroup, secondGroup);
+            Assert.assertEquals(firstOther, secondOther);
+        }
+    }
+
+    @Test
+    public void testSelectFromLinkedList() {
+        final List<String> instances = new LinkedList<String>(group.instances());
+        InstanceGroup linkedGroup = new InstanceGroup() {
+            public GroupType type() {
+                return Types.TEST;
+            }
+
+            public String name() {
+                return "LinkedGroup";
+            }
+
+            public String region() {
+                return "region";
+            }
+
+            public List<String> instances() {
+                return instances;
+            }
+
+            public void addInstance(String ignored) {
+            }
+
+            @Override
+            public InstanceGroup copyAs(String name) {
+                return this;
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            Collection<String> selected = selector.select(linkedGroup, 4.5);
+            Assert.assertEquals(new HashSet<String>(selected).size(), selected.size(), "no duplicates");
+            Assert.assertTrue(selected.size() == 4 || selected.size() == 5);
+            Assert.assertTrue(instances.containsAll(selected));
+        }
+    }
 }
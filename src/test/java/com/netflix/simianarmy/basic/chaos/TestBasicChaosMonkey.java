@@ -18,8 +18,13 @@
  */
 package com.netflix.simianarmy.basic.chaos;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.core.Response;
 
@@ -29,8 +34,10 @@ import org.testng.annotations.Test;
 
 import com.netflix.simianarmy.Monkey;
 import com.netflix.simianarmy.MonkeyScheduler;
+import com.netflix.simianarmy.chaos.BlockAllNetworkTrafficChaosType;
 import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
 import com.netflix.simianarmy.chaos.ChaosMonkey;
+import com.netflix.simianarmy.chaos.ChaosType;
 import com.netflix.simianarmy.chaos.TestChaosMonkeyContext;
 import com.netflix.simianarmy.resources.chaos.ChaosMonkeyResource;
 
@@ -86,6 +93,76 @@ public class TestBasicChaosMonkey {
         Assert.assertEquals(terminated.get(1), "1:i-123456781");
     }
 
+    @Test
+    public void testUnleashedConcurrent() {
+        TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("unleashedConcurrent.properties");
+        ChaosMonkey chaos = new BasicChaosMonkey(ctx);
+        chaos.start();
+        chaos.stop();
+        Assert.assertEquals(ctx.selectedOn().size(), 2);
+        List<String> terminated = new ArrayList<String>(ctx.terminated());
+        Collections.sort(terminated);
+        Assert.assertEquals(terminated, Arrays.asList("0:i-123456780", "1:i-123456781"));
+        Assert.assertEquals(ctx.metadataLookups().size(), 1);
+    }
+
+    @Test
+    public void testAccountingLockOnlyHeldToRecord() {
+        TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("unleashedOverlapping.properties");
+        final CountDownLatch notifying = new CountDownLatch(2);
+        final AtomicInteger overlapping = new AtomicInteger();
+        ChaosMonkey chaos = new BasicChaosMonkey(ctx) {
+            @Override
+            protected String getAccountingKey(InstanceGroup group) {
+                // both groups share the same lock
+                return "all";
+            }
+
+            @Override
+            public void sendTerminationNotification(InstanceGroup group, String instance, ChaosType chaosType) {
+                notifying.countDown();
+                try {
+                    if (notifying.await(5, TimeUnit.SECONDS)) {
+                        overlapping.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.sendTerminationNotification(group, instance, chaosType);
+            }
+        };
+        chaos.start();
+        chaos.stop();
+        // the notifications of both groups were in flight at the same time
+        Assert.assertEquals(overlapping.get(), 2);
+        Assert.assertEquals(ctx.terminated().size(), 2);
+    }
+
+    @Test
+    public void testMetadataPrefetchedInOneBatch() {
+        TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("unleashedEnabledA.properties");
+        ChaosMonkey chaos = new BasicChaosMonkey(ctx);
+        chaos.start();
+        chaos.stop();
+        Assert.assertEquals(ctx.terminated().size(), 2);
+        Assert.assertEquals(ctx.metadataLookups().size(), 1);
+        Assert.assertEquals(ctx.metadataLookups().get(0), "0:i-123456780,1:i-123456781");
+    }
+
+    @Test
+    public void testOndemandTerminationDoesNotCacheMetadataForRuns() throws Exception {
+        TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("ondemandThenScheduled.properties");
+        ChaosMonkey chaos = new BasicChaosMonkey(ctx);
+        chaos.terminateNow("TYPE_A", "name0", new BlockAllNetworkTrafficChaosType(ctx.configuration()));
+        Assert.assertEquals(ctx.metadataLookups(), Arrays.asList("0:i-123456780"));
+
+        // the run looks the instance up again rather than reusing what the on-demand termination saw
+        chaos.start();
+        chaos.stop();
+        Assert.assertEquals(ctx.metadataLookups().size(), 2);
+        Assert.assertEquals(ctx.metadataLookups().get(1), "0:i-123456780,1:i-123456781");
+    }
+
     @Test
     public void testEnabledB() {
         TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("enabledB.properties");
@@ -385,6 +462,34 @@ public class TestBasicChaosMonkey {
         Assert.assertEquals(chaos.getNumFromCfgOrDefault(named3, "maxTerminationsPerDay", 4.0), 4.0);
     }
 
+    @Test
+    public void testGroupSettingsWithDefault() {
+        TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("propertiesWithDefaults.properties");
+        BasicChaosMonkey chaos = new BasicChaosMonkey(ctx);
+
+        InstanceGroup named1 = new BasicInstanceGroup("named1", GroupTypes.TYPE_A, "test-dev-1");
+        InstanceGroup named2 = new BasicInstanceGroup("named2", GroupTypes.TYPE_A, "test-dev-1");
+        InstanceGroup named3 = new BasicInstanceGroup("named3", GroupTypes.TYPE_B, "test-dev-1");
+
+        GroupChaosSettings settings = chaos.getGroupSettings(named1);
+        Assert.assertFalse(settings.isEnabled());
+        Assert.assertEquals(settings.getProbability(), 1.1);
+        Assert.assertEquals(settings.getMaxTerminationsPerDay(), 2.1);
+        Assert.assertSame(chaos.getGroupSettings(named1), settings);
+
+        settings = chaos.getGroupSettings(named2);
+        Assert.assertTrue(settings.isEnabled());
+        Assert.assertEquals(settings.getProbability(), 1.0);
+        Assert.assertEquals(settings.getMaxTerminationsPerDay(), 2.0);
+
+        settings = chaos.getGroupSettings(named3);
+        Assert.assertFalse(settings.isEnabled());
+        Assert.assertEquals(settings.getProbability(), 1.0);
+        Assert.assertEquals(settings.getMaxTerminationsPerDay(), 1.0);
+        Assert.assertEquals(settings.getLastOptInTimeInMilliseconds(), -1);
+        Assert.assertFalse(settings.isNotificationEnabled());
+    }
+
     @Test
     public void testMandatoryTerminationDisabled() {
         TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("mandatoryTerminationDisabled.properties");
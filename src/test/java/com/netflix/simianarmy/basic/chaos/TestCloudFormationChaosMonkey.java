@@ -18,6 +18,9 @@
  */
 package com.netflix.simianarmy.basic.chaos;
 
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import static org.testng.Assert.assertEquals;
@@ -26,6 +29,8 @@ import static org.testng.Assert.assertFalse;
 
 import com.netflix.simianarmy.chaos.TestChaosMonkeyContext;
 import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
+import com.netflix.simianarmy.chaos.ChaosType;
+import com.netflix.simianarmy.chaos.ShutdownInstanceChaosType;
 
 public class TestCloudFormationChaosMonkey {
 
@@ -52,6 +57,28 @@ public class TestCloudFormationChaosMonkey {
         assertFalse(chaos.isMaxTerminationCountExceeded(group1));
     }
 
+    @Test
+    public void testPreviousTerminationCountOutsideRun() {
+        TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("cloudformation.properties");
+        CloudFormationChaosMonkey chaos = new CloudFormationChaosMonkey(ctx);
+        ChaosType chaosType = new ShutdownInstanceChaosType(ctx.configuration());
+        Date before = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1));
+        chaos.recordTermination(new BasicInstanceGroup("new-group-TestGroup1-XCFNFNFNF",
+                TestChaosMonkeyContext.CrawlerTypes.TYPE_D, "region"), "i-1", chaosType);
+        chaos.recordTermination(new BasicInstanceGroup("new-group-TestGroup1-YCFNFNFNF",
+                TestChaosMonkeyContext.CrawlerTypes.TYPE_D, "region"), "i-2", chaosType);
+        chaos.recordTermination(new BasicInstanceGroup("new-group-TestGroup2-XCFNFNFNF",
+                TestChaosMonkeyContext.CrawlerTypes.TYPE_D, "region"), "i-3", chaosType);
+
+        // the terminations of all the stacks of the group count, as they do within a run
+        InstanceGroup group1 = new BasicInstanceGroup("new-group-TestGroup1",
+                TestChaosMonkeyContext.CrawlerTypes.TYPE_D, "region");
+        assertEquals(chaos.getPreviousTerminationCount(group1, before), 2);
+        InstanceGroup otherRegion = new BasicInstanceGroup("new-group-TestGroup1",
+                TestChaosMonkeyContext.CrawlerTypes.TYPE_D, "region2");
+        assertEquals(chaos.getPreviousTerminationCount(otherRegion, before), 0);
+    }
+
     @Test
     public void testGetEffectiveProbability() {
         TestChaosMonkeyContext ctx = new TestChaosMonkeyContext("cloudformation.properties");
@@ -0,0 +1,69 @@
+// CHECKSTYLE IGNORE Javadoc
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.basic.chaos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.netflix.simianarmy.GroupType;
+
+public class TestImmutableInstanceGroup {
+
+    public enum Types implements GroupType {
+        TEST
+    }
+
+    @Test
+    public void testCopyAs() {
+        List<String> instances = new ArrayList<String>(Arrays.asList("i-123456780", "i-123456781"));
+        ImmutableInstanceGroup group = new ImmutableInstanceGroup("group-abc", Types.TEST, "region", instances);
+        // later changes to the crawled list do not leak into the group
+        instances.add("i-123456782");
+        Assert.assertEquals(group.instances(), Arrays.asList("i-123456780", "i-123456781"));
+
+        ImmutableInstanceGroup copy = group.copyAs("group");
+        Assert.assertEquals(copy.name(), "group");
+        Assert.assertEquals(copy.type(), Types.TEST);
+        Assert.assertEquals(copy.region(), "region");
+        Assert.assertSame(copy.instances(), group.instances());
+    }
+
+    @Test
+    public void testAddInstance() {
+        ImmutableInstanceGroup group = new ImmutableInstanceGroup("group", Types.TEST, "region",
+                Arrays.asList("i-123456780"));
+        List<String> before = group.instances();
+        ImmutableInstanceGroup copy = group.copyAs("copy");
+        group.addInstance("i-123456781");
+        Assert.assertEquals(group.instances(), Arrays.asList("i-123456780", "i-123456781"));
+        // the list handed out before and the copy keep the instances they had
+        Assert.assertEquals(before, Arrays.asList("i-123456780"));
+        Assert.assertEquals(copy.instances(), Arrays.asList("i-123456780"));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testInstancesAreImmutable() {
+        new ImmutableInstanceGroup("group", Types.TEST, "region", new ArrayList<String>()).instances()
+                .add("i-123456780");
+    }
+}
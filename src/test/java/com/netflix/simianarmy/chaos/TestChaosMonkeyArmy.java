@@ -20,6 +20,7 @@ package com.netflix.simianarmy.chaos;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
@@ -109,6 +110,10 @@ public class TestChaosMonkeyArmy {
 
         Assert.assertEquals(sshActions.get(3).getMethod(), "exec");
         Assert.assertEquals(sshActions.get(3).getInstanceId(), "1:i-123456781");
+
+        // a single session per instance, shared by the check and the script
+        Assert.assertEquals(ctx.getSshSessions(), Arrays.asList("connect:0:i-123456780", "disconnect:0:i-123456780",
+                "connect:1:i-123456781", "disconnect:1:i-123456781"));
     }
 
     @Test
@@ -44,6 +44,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.netflix.simianarmy.CloudClient;
 import com.netflix.simianarmy.GroupType;
+import com.netflix.simianarmy.InstanceMetadata;
+import com.netflix.simianarmy.InstanceMetadataSource;
 import com.netflix.simianarmy.MonkeyConfiguration;
 import com.netflix.simianarmy.TestMonkeyContext;
 import com.netflix.simianarmy.basic.BasicConfiguration;
@@ -184,7 +186,7 @@ public class TestChaosMonkeyContext extends TestMonkeyContext implements ChaosMo
         };
     }
 
-    private final List<InstanceGroup> selectedOn = new LinkedList<InstanceGroup>();
+    private final List<InstanceGroup> selectedOn = Collections.synchronizedList(new LinkedList<InstanceGroup>());
 
     public List<InstanceGroup> selectedOn() {
         return selectedOn;
@@ -203,19 +205,28 @@ public class TestChaosMonkeyContext extends TestMonkeyContext implements ChaosMo
         };
     }
 
-    private final List<String> terminated = new LinkedList<String>();
-    private final List<String> selected = Lists.newArrayList();
-    private final List<String> cloudActions = Lists.newArrayList();
+    private final List<String> terminated = Collections.synchronizedList(new LinkedList<String>());
+    private final List<String> selected = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> cloudActions = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> metadataLookups = Lists.newArrayList();
 
     public List<String> terminated() {
         return terminated;
     }
 
+    public List<String> metadataLookups() {
+        return metadataLookups;
+    }
+
     private final Map<String, String> securityGroupNames = Maps.newHashMap();
 
+    /** A cloud client that describes the metadata of several instances at once, like the AWS one. */
+    private interface MetadataCloudClient extends CloudClient, InstanceMetadataSource {
+    }
+
     @Override
     public CloudClient cloudClient() {
-        return new CloudClient() {
+        return new MetadataCloudClient() {
             @Override
             public void terminateInstance(String instanceId) {
                 terminated.add(instanceId);
@@ -273,6 +284,7 @@ public class TestChaosMonkeyContext extends TestMonkeyContext implements ChaosMo
 
             @Override
             public SshClient connectSsh(String instanceId, LoginCredentials credentials) {
+                sshSessions.add("connect:" + instanceId);
                 return new MockSshClient(instanceId, credentials);
             }
 
@@ -298,10 +310,23 @@ public class TestChaosMonkeyContext extends TestMonkeyContext implements ChaosMo
             public void setInstanceSecurityGroups(String instanceId, List<String> groupIds) {
                 cloudActions.add("setInstanceSecurityGroups:" + instanceId + ":" + Joiner.on(',').join(groupIds));
             }
+
+            @Override
+            public Map<String, InstanceMetadata> describeInstanceMetadata(String... instanceIds) {
+                metadataLookups.add(Joiner.on(',').join(instanceIds));
+                Map<String, InstanceMetadata> metadata = Maps.newHashMap();
+                for (String instanceId : instanceIds) {
+                    metadata.put(instanceId, new InstanceMetadata(instanceId,
+                            Lists.newArrayList("volume-0", "volume-1", "volume-2"), "volume-0", "vpc-1",
+                            Lists.newArrayList("sg-0"), true));
+                }
+                return metadata;
+            }
         };
     }
 
     private final List<SshAction> sshActions = Lists.newArrayList();
+    private final List<String> sshSessions = Lists.newArrayList();
 
     public static class SshAction {
         private String instanceId;
@@ -385,6 +410,7 @@ public class TestChaosMonkeyContext extends TestMonkeyContext implements ChaosMo
 
         @Override
         public void disconnect() {
+            sshSessions.add("disconnect:" + instanceId);
         }
 
         @Override
@@ -469,6 +495,10 @@ public class TestChaosMonkeyContext extends TestMonkeyContext implements ChaosMo
         return sshActions;
     }
 
+    public List<String> getSshSessions() {
+        return sshSessions;
+    }
+
     public List<String> getCloudActions() {
         return cloudActions;
     }
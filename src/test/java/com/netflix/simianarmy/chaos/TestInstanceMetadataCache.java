@@ -0,0 +1,59 @@
+// CHECKSTYLE IGNORE Javadoc
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.chaos;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.netflix.simianarmy.CloudClient;
+import com.netflix.simianarmy.InstanceMetadata;
+import com.netflix.simianarmy.NotFoundException;
+
+public class TestInstanceMetadataCache {
+
+    @Test
+    public void testMetadataFromPlainCloudClient() {
+        // a client written against the CloudClient interface alone, without batched metadata lookups
+        CloudClient cloudClient = mock(CloudClient.class);
+        when(cloudClient.listAttachedVolumes("i-1", true)).thenReturn(Arrays.asList("vol-root", "vol-data"));
+        when(cloudClient.listAttachedVolumes("i-1", false)).thenReturn(Arrays.asList("vol-data"));
+        when(cloudClient.canChangeInstanceSecurityGroups("i-1")).thenReturn(true);
+        when(cloudClient.listAttachedVolumes("i-2", true)).thenThrow(new NotFoundException("gone"));
+
+        InstanceMetadataCache cache = new InstanceMetadataCache();
+        cache.prefetch(cloudClient, Arrays.asList("i-1", "i-2"));
+
+        InstanceMetadata metadata = cache.get(cloudClient, "i-1");
+        Assert.assertEquals(metadata.getAttachedVolumes(false), Arrays.asList("vol-data"));
+        Assert.assertEquals(metadata.getRootVolumeId(), "vol-root");
+        Assert.assertTrue(metadata.isRootVolumeEbs());
+        Assert.assertTrue(metadata.canChangeSecurityGroups());
+        try {
+            cache.get(cloudClient, "i-2");
+            Assert.fail("expected a NotFoundException for a terminated instance");
+        } catch (NotFoundException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,90 @@
+// CHECKSTYLE IGNORE Javadoc
+// CHECKSTYLE IGNORE MagicNumberCheck
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.chaos;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.jclouds.domain.LoginCredentials;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.netflix.simianarmy.basic.BasicConfiguration;
+
+public class TestSshCredentialProvider {
+
+    private static File createKey(String content) throws IOException {
+        File key = File.createTempFile("tmp", "key");
+        key.deleteOnExit();
+        Files.write(content, key, Charsets.UTF_8);
+        return key;
+    }
+
+    @Test
+    public void testNoKey() {
+        SshCredentialProvider provider = new SshCredentialProvider(new BasicConfiguration(new Properties()));
+        Assert.assertNull(provider.getCredentials(null));
+        Assert.assertNull(provider.getCredentials(TestChaosMonkeyContext.CrawlerTypes.TYPE_A));
+    }
+
+    @Test
+    public void testKeyPerGroupType() throws IOException {
+        File defaultKey = createKey("defaultkey");
+        File typeKey = createKey("typekey");
+        Properties props = new Properties();
+        props.setProperty("simianarmy.chaos.ssh.key", defaultKey.getAbsolutePath());
+        props.setProperty("simianarmy.chaos.ssh.TYPE_B.key", typeKey.getAbsolutePath());
+        props.setProperty("simianarmy.chaos.ssh.TYPE_B.user", "ubuntu");
+        SshCredentialProvider provider = new SshCredentialProvider(new BasicConfiguration(props));
+
+        LoginCredentials credentials = provider.getCredentials(TestChaosMonkeyContext.CrawlerTypes.TYPE_A);
+        Assert.assertEquals(credentials.getUser(), "root");
+        Assert.assertEquals(credentials.getPrivateKey(), "defaultkey");
+        Assert.assertSame(provider.getCredentials(TestChaosMonkeyContext.CrawlerTypes.TYPE_A), credentials);
+
+        credentials = provider.getCredentials(TestChaosMonkeyContext.CrawlerTypes.TYPE_B);
+        Assert.assertEquals(credentials.getUser(), "ubuntu");
+        Assert.assertEquals(credentials.getPrivateKey(), "typekey");
+    }
+
+    @Test
+    public void testRotatedKey() throws IOException {
+        File key = createKey("oldkey");
+        Properties props = new Properties();
+        props.setProperty("simianarmy.chaos.ssh.key", key.getAbsolutePath());
+        props.setProperty("simianarmy.chaos.ssh.keyCheckIntervalSeconds", "0");
+        SshCredentialProvider provider = new SshCredentialProvider(new BasicConfiguration(props));
+
+        LoginCredentials credentials = provider.getCredentials(null);
+        Assert.assertEquals(credentials.getPrivateKey(), "oldkey");
+        Assert.assertSame(provider.getCredentials(null), credentials);
+
+        Files.write("newkey", key, Charsets.UTF_8);
+        Assert.assertTrue(key.setLastModified(key.lastModified() + 10000));
+        Assert.assertEquals(provider.getCredentials(null).getPrivateKey(), "newkey");
+
+        // a key that cannot be read while being rotated keeps the previous one
+        Assert.assertTrue(key.delete());
+        Assert.assertEquals(provider.getCredentials(null).getPrivateKey(), "newkey");
+    }
+}
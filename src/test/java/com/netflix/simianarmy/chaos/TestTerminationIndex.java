@@ -0,0 +1,113 @@
+// CHECKSTYLE IGNORE Javadoc
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.chaos;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import org.mockito.Matchers;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.netflix.simianarmy.MonkeyRecorder;
+import com.netflix.simianarmy.MonkeyRecorder.Event;
+import com.netflix.simianarmy.basic.BasicRecorderEvent;
+import com.netflix.simianarmy.basic.chaos.BasicInstanceGroup;
+import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
+import com.netflix.simianarmy.chaos.TestChaosMonkeyContext.CrawlerTypes;
+
+public class TestTerminationIndex {
+
+    private static final long NOW = 1000000L;
+
+    private Event mkTermination(String groupName, long time) {
+        return new BasicRecorderEvent(ChaosMonkey.Type.CHAOS, ChaosMonkey.EventTypes.CHAOS_TERMINATION,
+                "region", "i-" + time, time).addField("groupType", CrawlerTypes.TYPE_A.name())
+                .addField("groupName", groupName);
+    }
+
+    private MonkeyRecorder mkRecorder(Event... events) {
+        MonkeyRecorder recorder = mock(MonkeyRecorder.class);
+        when(recorder.findEvents(eq(ChaosMonkey.Type.CHAOS), eq(ChaosMonkey.EventTypes.CHAOS_TERMINATION),
+                Matchers.<Map<String, String>>any(), any(Date.class))).thenReturn(Arrays.asList(events));
+        return recorder;
+    }
+
+    private InstanceGroup mkGroup(String name) {
+        return new BasicInstanceGroup(name, CrawlerTypes.TYPE_A, "region");
+    }
+
+    @Test
+    public void testCount() {
+        MonkeyRecorder recorder = mkRecorder(mkTermination("group1", NOW - 10), mkTermination("group1", NOW - 20),
+                mkTermination("group1", NOW - 30), mkTermination("group2", NOW - 10));
+        TerminationIndex index = new TerminationIndex(recorder);
+
+        Assert.assertEquals(index.count(mkGroup("group1"), new Date(NOW - 100)), 3);
+        Assert.assertEquals(index.count(mkGroup("group1"), new Date(NOW - 20)), 1);
+        Assert.assertEquals(index.count(mkGroup("group1"), new Date(NOW - 25)), 2);
+        Assert.assertEquals(index.count(mkGroup("group2"), new Date(NOW - 100)), 1);
+        Assert.assertEquals(index.count(mkGroup("group3"), new Date(NOW - 100)), 0);
+
+        // a single query answers all the groups and all the shorter windows
+        verify(recorder, times(1)).findEvents(eq(ChaosMonkey.Type.CHAOS),
+                eq(ChaosMonkey.EventTypes.CHAOS_TERMINATION), Matchers.<Map<String, String>>any(),
+                any(Date.class));
+
+        // a longer window loads again
+        index.count(mkGroup("group1"), new Date(NOW - 200));
+        verify(recorder, times(2)).findEvents(eq(ChaosMonkey.Type.CHAOS),
+                eq(ChaosMonkey.EventTypes.CHAOS_TERMINATION), Matchers.<Map<String, String>>any(),
+                any(Date.class));
+    }
+
+    @Test
+    public void testAddAndReset() {
+        MonkeyRecorder recorder = mkRecorder(mkTermination("group1", NOW - 10));
+        TerminationIndex index = new TerminationIndex(recorder);
+        Assert.assertEquals(index.count(mkGroup("group1"), new Date(NOW - 100)), 1);
+
+        index.add(mkGroup("group1"), new Date(NOW));
+        Assert.assertEquals(index.count(mkGroup("group1"), new Date(NOW - 100)), 2);
+
+        index.reset();
+        Assert.assertEquals(index.count(mkGroup("group1"), new Date(NOW - 100)), 1);
+    }
+
+    @Test
+    public void testNormalizedGroupNames() {
+        MonkeyRecorder recorder = mkRecorder(mkTermination("stack-group-ABC", NOW - 10),
+                mkTermination("stack-group-DEF", NOW - 20));
+        TerminationIndex index = new TerminationIndex(recorder) {
+            @Override
+            protected String normalizeGroupName(String groupName) {
+                return groupName.replaceAll("(-)([^-]*$)", "");
+            }
+        };
+        Assert.assertEquals(index.count(mkGroup("stack-group"), new Date(NOW - 100)), 2);
+    }
+}
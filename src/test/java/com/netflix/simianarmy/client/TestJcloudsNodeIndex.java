@@ -0,0 +1,94 @@
+// CHECKSTYLE IGNORE Javadoc
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class TestJcloudsNodeIndex {
+
+    private static NodeMetadata node(String id) {
+        NodeMetadata node = mock(NodeMetadata.class);
+        when(node.getId()).thenReturn(id);
+        return node;
+    }
+
+    @Test
+    public void testListedOnce() {
+        NodeMetadata node1 = node("us-east-1/i-1");
+        NodeMetadata node2 = node("us-east-1/i-2");
+        ComputeService computeService = mock(ComputeService.class);
+        doReturn(ImmutableSet.of(node1, node2)).when(computeService).listNodes();
+
+        JcloudsNodeIndex index = new JcloudsNodeIndex();
+        Assert.assertSame(index.get(computeService, "us-east-1/i-1"), node1);
+        Assert.assertSame(index.get(computeService, "us-east-1/i-2"), node2);
+        verify(computeService, times(1)).listNodes();
+
+        index.invalidate();
+        Assert.assertSame(index.get(computeService, "us-east-1/i-1"), node1);
+        verify(computeService, times(2)).listNodes();
+    }
+
+    @Test
+    public void testMissFetchesSingleNode() {
+        NodeMetadata node3 = node("us-east-1/i-3");
+        ComputeService computeService = mock(ComputeService.class);
+        doReturn(ImmutableSet.of(node("us-east-1/i-1"))).when(computeService).listNodes();
+        when(computeService.getNodeMetadata("us-east-1/i-3")).thenReturn(node3);
+
+        JcloudsNodeIndex index = new JcloudsNodeIndex();
+        Assert.assertSame(index.get(computeService, "us-east-1/i-3"), node3);
+        Assert.assertSame(index.get(computeService, "us-east-1/i-3"), node3);
+        verify(computeService, times(1)).listNodes();
+        verify(computeService, times(1)).getNodeMetadata("us-east-1/i-3");
+    }
+
+    @Test
+    public void testRemovedNodeFetchedAgain() {
+        NodeMetadata running = node("us-east-1/i-5");
+        NodeMetadata terminated = node("us-east-1/i-5");
+        ComputeService computeService = mock(ComputeService.class);
+        doReturn(ImmutableSet.of(running)).when(computeService).listNodes();
+        when(computeService.getNodeMetadata("us-east-1/i-5")).thenReturn(terminated);
+
+        JcloudsNodeIndex index = new JcloudsNodeIndex();
+        Assert.assertSame(index.get(computeService, "us-east-1/i-5"), running);
+        index.remove("us-east-1/i-5");
+        Assert.assertSame(index.get(computeService, "us-east-1/i-5"), terminated);
+        verify(computeService, times(1)).listNodes();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testMissingNode() {
+        ComputeService computeService = mock(ComputeService.class);
+        doReturn(ImmutableSet.of()).when(computeService).listNodes();
+        new JcloudsNodeIndex().get(computeService, "us-east-1/i-4");
+    }
+}
@@ -24,13 +24,23 @@ import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsRequest
 import com.amazonaws.services.autoscaling.model.DescribeAutoScalingGroupsResult;
 import com.amazonaws.services.autoscaling.model.Instance;
 import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.EbsInstanceBlockDevice;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.GroupIdentifier;
+import com.amazonaws.services.ec2.model.InstanceBlockDeviceMapping;
+import com.amazonaws.services.ec2.model.Reservation;
 import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
+import com.netflix.simianarmy.InstanceMetadata;
 import org.mockito.ArgumentCaptor;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -70,6 +80,18 @@ public class TestAWSClient extends AWSClient {
         Assert.assertNotNull(client1.superAsgClient(), "non null super asgClient");
     }
 
+    @Test
+    public void testClientsAreShared() {
+        TestAWSClient client1 = new TestAWSClient();
+        AmazonEC2 ec2 = client1.superEc2Client();
+        Assert.assertSame(client1.superEc2Client(), ec2, "ec2Client is reused");
+        Assert.assertSame(client1.superAsgClient(), client1.superAsgClient(), "asgClient is reused");
+        Assert.assertSame(client1.sdbClient(), client1.sdbClient(), "sdbClient is reused");
+
+        client1.shutdown();
+        Assert.assertNotSame(client1.superEc2Client(), ec2, "ec2Client is recreated after shutdown");
+    }
+
     @Test
     public void testTerminateInstance() {
 
@@ -119,4 +141,70 @@ public class TestAWSClient extends AWSClient {
         Assert.assertEquals(asgs.get(1).getInstances().size(), 1);
         Assert.assertEquals(asgs.get(1).getInstances().get(0).getInstanceId(), "i-012345671");
     }
+
+    private InstanceBlockDeviceMapping mkMapping(String deviceName, String volumeId) {
+        return new InstanceBlockDeviceMapping().withDeviceName(deviceName)
+                .withEbs(new EbsInstanceBlockDevice().withVolumeId(volumeId));
+    }
+
+    @Test
+    public void testDescribeInstanceMetadata() {
+        com.amazonaws.services.ec2.model.Instance instance = new com.amazonaws.services.ec2.model.Instance()
+                .withInstanceId("i-123456789").withRootDeviceName("/dev/sda1").withVpcId("vpc-1")
+                .withBlockDeviceMappings(mkMapping("/dev/sda1", "vol-0"), mkMapping("/dev/sdb", "vol-1"))
+                .withSecurityGroups(new GroupIdentifier().withGroupId("sg-1"));
+        DescribeInstancesResult result = new DescribeInstancesResult()
+                .withReservations(new Reservation().withInstances(instance));
+        TestAWSClient client = new TestAWSClient();
+        when(client.ec2Mock.describeInstances(any(DescribeInstancesRequest.class))).thenReturn(result);
+
+        Map<String, InstanceMetadata> metadata = client.describeInstanceMetadata("i-123456789", "i-gone");
+
+        ArgumentCaptor<DescribeInstancesRequest> arg = ArgumentCaptor.forClass(DescribeInstancesRequest.class);
+        verify(client.ec2Mock).describeInstances(arg.capture());
+        Assert.assertEquals(arg.getValue().getFilters().get(0).getValues(), Arrays.asList("i-123456789", "i-gone"));
+
+        Assert.assertEquals(metadata.size(), 1);
+        InstanceMetadata md = metadata.get("i-123456789");
+        Assert.assertEquals(md.getAttachedVolumes(true), Arrays.asList("vol-0", "vol-1"));
+        Assert.assertEquals(md.getAttachedVolumes(false), Arrays.asList("vol-1"));
+        Assert.assertTrue(md.isRootVolumeEbs());
+        Assert.assertEquals(md.getVpcId(), "vpc-1");
+        Assert.assertEquals(md.getSecurityGroupIds(), Arrays.asList("sg-1"));
+        Assert.assertTrue(md.canChangeSecurityGroups());
+    }
+
+    private DescribeInstancesResult mkInstancesPage(String nextToken, String... instanceIds) {
+        Reservation reservation = new Reservation();
+        for (String instanceId : instanceIds) {
+            reservation.withInstances(new com.amazonaws.services.ec2.model.Instance().withInstanceId(instanceId));
+        }
+        return new DescribeInstancesResult().withReservations(reservation).withNextToken(nextToken);
+    }
+
+    @Test
+    public void testIterateInstances() {
+        TestAWSClient client = new TestAWSClient();
+        when(client.ec2Mock.describeInstances(any(DescribeInstancesRequest.class)))
+                .thenReturn(mkInstancesPage("token1", "i-1", "i-2"))
+                .thenReturn(mkInstancesPage(null, "i-3"));
+
+        Iterable<com.amazonaws.services.ec2.model.Instance> instances =
+                client.iterateInstances(100, new Filter("instance-state-name", Arrays.asList("running")));
+        verify(client.ec2Mock, times(0)).describeInstances(any(DescribeInstancesRequest.class));
+
+        Iterator<com.amazonaws.services.ec2.model.Instance> it = instances.iterator();
+        Assert.assertEquals(it.next().getInstanceId(), "i-1");
+        Assert.assertEquals(it.next().getInstanceId(), "i-2");
+        verify(client.ec2Mock, times(1)).describeInstances(any(DescribeInstancesRequest.class));
+        Assert.assertEquals(it.next().getInstanceId(), "i-3");
+        Assert.assertFalse(it.hasNext());
+
+        ArgumentCaptor<DescribeInstancesRequest> arg = ArgumentCaptor.forClass(DescribeInstancesRequest.class);
+        verify(client.ec2Mock, times(2)).describeInstances(arg.capture());
+        Assert.assertNull(arg.getAllValues().get(0).getNextToken());
+        Assert.assertEquals(arg.getAllValues().get(0).getMaxResults(), Integer.valueOf(100));
+        Assert.assertEquals(arg.getAllValues().get(0).getFilters().get(0).getName(), "instance-state-name");
+        Assert.assertEquals(arg.getAllValues().get(1).getNextToken(), "token1");
+    }
 }
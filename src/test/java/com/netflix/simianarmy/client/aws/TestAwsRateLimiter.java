@@ -0,0 +1,126 @@
+// CHECKSTYLE IGNORE Javadoc
+// CHECKSTYLE IGNORE MagicNumberCheck
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client.aws;
+
+import java.util.Properties;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryPolicy;
+import com.netflix.simianarmy.basic.BasicConfiguration;
+
+public class TestAwsRateLimiter {
+
+    private static AmazonServiceException serviceException(String errorCode, int statusCode) {
+        AmazonServiceException e = new AmazonServiceException(errorCode);
+        e.setErrorCode(errorCode);
+        e.setStatusCode(statusCode);
+        return e;
+    }
+
+    @Test
+    public void testAdditiveIncreaseMultiplicativeDecrease() {
+        AwsRateLimiter limiter = new AwsRateLimiter("us-east-1/ec2", 1, 8, 0.5);
+        Assert.assertEquals(limiter.getRate(), 8.0);
+
+        limiter.afterError(null, null, serviceException("RequestLimitExceeded", 503));
+        Assert.assertEquals(limiter.getRate(), 4.0);
+        // throttles of the same burst only lower the rate once
+        limiter.afterError(null, null, serviceException("Throttling", 400));
+        Assert.assertEquals(limiter.getRate(), 4.0);
+        Assert.assertEquals(limiter.getThrottleCount(), 2);
+
+        limiter.afterResponse(null, null);
+        limiter.afterResponse(null, null);
+        Assert.assertEquals(limiter.getRate(), 5.0);
+
+        // other errors leave the rate alone
+        limiter.afterError(null, null, serviceException("InvalidInstanceID.NotFound", 400));
+        Assert.assertEquals(limiter.getRate(), 5.0);
+        Assert.assertEquals(limiter.getThrottleCount(), 2);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.afterResponse(null, null);
+        }
+        Assert.assertEquals(limiter.getRate(), 8.0);
+    }
+
+    @Test
+    public void testMinRate() {
+        AwsRateLimiter limiter = new AwsRateLimiter("us-east-1/autoscaling", 3, 4, 0);
+        limiter.onThrottle();
+        Assert.assertEquals(limiter.getRate(), 3.0);
+    }
+
+    @Test
+    public void testBurstThenWait() {
+        AwsRateLimiter limiter = new AwsRateLimiter("us-east-1/ec2", 1, 2, 0);
+        Assert.assertEquals(limiter.reserve(), 0);
+        Assert.assertEquals(limiter.reserve(), 0);
+        long wait = limiter.reserve();
+        Assert.assertTrue(wait > 0 && wait <= 500000000L, "waited " + wait);
+
+        limiter.acquire();
+        Assert.assertEquals(limiter.getCallCount(), 1);
+        Assert.assertTrue(limiter.getWaitTimeMillis() > 0);
+    }
+
+    @Test
+    public void testRetryPolicy() {
+        AwsRateLimiter limiter = new AwsRateLimiter("us-east-1/ec2", 1, 1000, 0);
+        RetryPolicy policy = limiter.retryPolicy(3);
+        Assert.assertEquals(policy.getMaxErrorRetry(), 3);
+        AmazonServiceException throttled = serviceException("RequestLimitExceeded", 503);
+        Assert.assertTrue(policy.getRetryCondition().shouldRetry(null, throttled, 0));
+        Assert.assertFalse(policy.getRetryCondition().shouldRetry(null,
+                serviceException("InvalidInstanceID.NotFound", 400), 0));
+
+        long delay = policy.getBackoffStrategy().delayBeforeNextRetry(null, throttled, 2);
+        Assert.assertTrue(delay >= 0 && delay <= 2000, "delay " + delay);
+        Assert.assertEquals(limiter.getThrottleCount(), 1);
+        Assert.assertEquals(limiter.getRate(), 500.0);
+    }
+
+    @Test
+    public void testJitteredDelay() {
+        for (int retries = 0; retries < 100; retries++) {
+            long delay = AwsRateLimiter.jitteredDelay(retries, false);
+            Assert.assertTrue(delay >= 0 && delay <= Math.min(20000, 100L << Math.min(retries, 20)), "delay " + delay);
+        }
+    }
+
+    @Test
+    public void testLimitersPerRegionAndService() {
+        Assert.assertNull(AwsRateLimiters.fromConfig(new BasicConfiguration(new Properties())));
+
+        Properties props = new Properties();
+        props.setProperty("simianarmy.client.aws.rateLimit.enabled", "true");
+        props.setProperty("simianarmy.client.aws.rateLimit.maxRate", "5");
+        AwsRateLimiters limiters = AwsRateLimiters.fromConfig(new BasicConfiguration(props));
+        AwsRateLimiter ec2 = limiters.get("us-east-1", "ec2");
+        Assert.assertSame(limiters.get("us-east-1", "ec2"), ec2);
+        Assert.assertNotSame(limiters.get("us-west-2", "ec2"), ec2);
+        Assert.assertNotSame(limiters.get("us-east-1", "autoscaling"), ec2);
+        Assert.assertEquals(ec2.getRate(), 5.0);
+        Assert.assertEquals(limiters.all().size(), 3);
+    }
+}
@@ -0,0 +1,93 @@
+// CHECKSTYLE IGNORE Javadoc
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client.aws.chaos;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.amazonaws.services.autoscaling.model.AutoScalingGroup;
+import com.amazonaws.services.autoscaling.model.Instance;
+import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
+import com.netflix.simianarmy.client.aws.AWSClient;
+
+public class TestMultiRegionASGChaosCrawler {
+
+    private AutoScalingGroup mkAsg(String asgName, String instanceId) {
+        AutoScalingGroup asg = new AutoScalingGroup();
+        asg.setAutoScalingGroupName(asgName);
+        Instance inst = new Instance();
+        inst.setInstanceId(instanceId);
+        asg.setInstances(Arrays.asList(inst));
+        return asg;
+    }
+
+    private AWSClient mkClient(String region, AutoScalingGroup... asgs) {
+        AWSClient awsMock = mock(AWSClient.class);
+        when(awsMock.region()).thenReturn(region);
+        when(awsMock.describeAutoScalingGroups((String[]) null)).thenReturn(Arrays.asList(asgs));
+        return awsMock;
+    }
+
+    @Test
+    public void testGroupTypes() {
+        MultiRegionASGChaosCrawler crawler = new MultiRegionASGChaosCrawler(
+                Arrays.asList(mkClient("us-east-1")), 1);
+        Assert.assertEquals(crawler.groupTypes().size(), 1);
+        Assert.assertEquals(crawler.groupTypes().iterator().next().name(), "ASG");
+    }
+
+    @Test
+    public void testGroupsAcrossRegions() {
+        AWSClient east = mkClient("us-east-1", mkAsg("asg1", "i-123456780"), mkAsg("asg2", "i-123456781"));
+        AWSClient west = mkClient("us-west-2", mkAsg("asg3", "i-123456782"));
+        AWSClient eu = mkClient("eu-west-1");
+        MultiRegionASGChaosCrawler crawler = new MultiRegionASGChaosCrawler(Arrays.asList(east, west, eu), 2);
+
+        List<InstanceGroup> groups = crawler.groups();
+
+        verify(east, times(1)).describeAutoScalingGroups((String[]) null);
+        verify(west, times(1)).describeAutoScalingGroups((String[]) null);
+        verify(eu, times(1)).describeAutoScalingGroups((String[]) null);
+
+        Assert.assertEquals(groups.size(), 3);
+        Assert.assertEquals(groups.get(0).name(), "asg1");
+        Assert.assertEquals(groups.get(0).region(), "us-east-1");
+        Assert.assertEquals(groups.get(1).name(), "asg2");
+        Assert.assertEquals(groups.get(1).region(), "us-east-1");
+        Assert.assertEquals(groups.get(2).name(), "asg3");
+        Assert.assertEquals(groups.get(2).region(), "us-west-2");
+        Assert.assertEquals(groups.get(2).instances().get(0), "i-123456782");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testRegionFailureIsRethrown() {
+        AWSClient east = mkClient("us-east-1", mkAsg("asg1", "i-123456780"));
+        AWSClient west = mkClient("us-west-2");
+        when(west.describeAutoScalingGroups((String[]) null)).thenThrow(new IllegalStateException("throttled"));
+        new MultiRegionASGChaosCrawler(Arrays.asList(east, west), 2).groups();
+    }
+}
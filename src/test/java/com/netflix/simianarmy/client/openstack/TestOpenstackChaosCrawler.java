@@ -0,0 +1,138 @@
+// CHECKSTYLE IGNORE Javadoc
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client.openstack;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.jclouds.collect.IterableWithMarker;
+import org.jclouds.collect.IterableWithMarkers;
+import org.jclouds.collect.PagedIterable;
+import org.jclouds.collect.PagedIterables;
+import org.jclouds.openstack.nova.v2_0.NovaApi;
+import org.jclouds.openstack.nova.v2_0.domain.Server;
+import org.jclouds.openstack.nova.v2_0.features.ServerApi;
+import org.jclouds.openstack.v2_0.domain.Resource;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.netflix.simianarmy.chaos.ChaosCrawler.InstanceGroup;
+
+public class TestOpenstackChaosCrawler {
+
+    private OpenstackClient client;
+    private ServerApi serverApi;
+
+    private static Server server(String id, Map<String, String> metadata) {
+        Server server = mock(Server.class);
+        when(server.getId()).thenReturn(id);
+        when(server.getMetadata()).thenReturn(metadata);
+        return server;
+    }
+
+    private static Resource resource(String id) {
+        Resource resource = mock(Resource.class);
+        when(resource.getId()).thenReturn(id);
+        return resource;
+    }
+
+    /** Two pages, the second one only fetched through the marker of the first. */
+    private static <T> PagedIterable<T> pages(List<T> first, final List<T> second) {
+        return PagedIterables.advance(IterableWithMarkers.from(first, "page2"),
+                new Function<Object, IterableWithMarker<T>>() {
+                    @Override
+                    public IterableWithMarker<T> apply(Object marker) {
+                        Assert.assertEquals(marker, "page2");
+                        return IterableWithMarkers.from(second);
+                    }
+                });
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        OpenstackServiceConnection connection = mock(OpenstackServiceConnection.class);
+        when(connection.getZone()).thenReturn("regionOne");
+        when(connection.getTenantName()).thenReturn("tenant");
+        NovaApi nova = mock(NovaApi.class);
+        serverApi = mock(ServerApi.class);
+        when(nova.getServerApiForZone("regionOne")).thenReturn(serverApi);
+        client = mock(OpenstackClient.class);
+        when(client.getServiceConnection()).thenReturn(connection);
+        when(client.getNovaApi()).thenReturn(nova);
+
+        doReturn(pages(Arrays.asList(resource("i-1"), resource("i-2")), Arrays.asList(resource("i-3"))))
+                .when(serverApi).list();
+        Map<String, String> stackA = ImmutableMap.of("stack", "stack-a");
+        Map<String, String> stackB = ImmutableMap.of("stack", "stack-b");
+        doReturn(pages(Arrays.asList(server("i-1", stackA), server("i-2", stackB)),
+                Arrays.asList(server("i-3", stackA), server("i-4", ImmutableMap.<String, String>of()))))
+                .when(serverApi).listInDetail();
+    }
+
+    private static void assertGroup(InstanceGroup group, String name, String... instances) {
+        Assert.assertEquals(group.name(), name);
+        Assert.assertEquals(group.region(), "regionOne");
+        Assert.assertEquals(group.instances(), Arrays.asList(instances));
+    }
+
+    @Test
+    public void testOneTenantGroupWithoutKey() {
+        List<InstanceGroup> groups = new OpenstackChaosCrawler(client).groups();
+        Assert.assertEquals(groups.size(), 1);
+        assertGroup(groups.get(0), "tenant", "i-1", "i-2", "i-3");
+        // only the ids are needed, the servers are not listed in detail
+        verify(serverApi, never()).listInDetail();
+    }
+
+    @Test
+    public void testTenantGroupFilteredOutWithoutKey() {
+        Assert.assertTrue(new OpenstackChaosCrawler(client).groups("stack-a").isEmpty());
+        verify(serverApi, never()).list();
+        Assert.assertEquals(new OpenstackChaosCrawler(client).groups("tenant").size(), 1);
+    }
+
+    @Test
+    public void testGroupsByMetadataKey() {
+        List<InstanceGroup> groups = new OpenstackChaosCrawler(client, "stack").groups();
+        Assert.assertEquals(groups.size(), 3);
+        assertGroup(groups.get(0), "stack-a", "i-1", "i-3");
+        assertGroup(groups.get(1), "stack-b", "i-2");
+        // servers without the key fall back to the tenant group
+        assertGroup(groups.get(2), "tenant", "i-4");
+        verify(serverApi, never()).list();
+    }
+
+    @Test
+    public void testGroupsByMetadataKeyFilteredByName() {
+        List<InstanceGroup> groups = new OpenstackChaosCrawler(client, "stack").groups("stack-a", "tenant");
+        Assert.assertEquals(groups.size(), 2);
+        assertGroup(groups.get(0), "stack-a", "i-1", "i-3");
+        assertGroup(groups.get(1), "tenant", "i-4");
+    }
+}
@@ -0,0 +1,132 @@
+// CHECKSTYLE IGNORE Javadoc
+/*
+ *
+ *  Copyright 2012 Netflix, Inc.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ */
+package com.netflix.simianarmy.client.openstack;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jclouds.openstack.nova.v2_0.NovaApi;
+import org.jclouds.openstack.nova.v2_0.domain.SecurityGroup;
+import org.jclouds.openstack.nova.v2_0.domain.ServerWithSecurityGroups;
+import org.jclouds.openstack.nova.v2_0.extensions.SecurityGroupApi;
+import org.jclouds.openstack.nova.v2_0.extensions.ServerWithSecurityGroupsApi;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableSet;
+
+public class TestOpenstackClient {
+
+    private NovaApi nova;
+    private SecurityGroupApi securityGroupApi;
+    private ServerWithSecurityGroupsApi serverApi;
+    private final List<String> modifications = new ArrayList<String>();
+    private OpenstackClient client;
+
+    private static SecurityGroup securityGroup(String id, String name) {
+        SecurityGroup group = mock(SecurityGroup.class);
+        when(group.getId()).thenReturn(id);
+        when(group.getName()).thenReturn(name);
+        return group;
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        OpenstackServiceConnection connection = mock(OpenstackServiceConnection.class);
+        when(connection.getZone()).thenReturn("regionOne");
+        nova = mock(NovaApi.class);
+        securityGroupApi = mock(SecurityGroupApi.class);
+        serverApi = mock(ServerWithSecurityGroupsApi.class);
+        doReturn(Optional.of(securityGroupApi)).when(nova).getSecurityGroupExtensionForZone("regionOne");
+        doReturn(Optional.of(serverApi)).when(nova).getServerWithSecurityGroupsExtensionForZone("regionOne");
+        doReturn(FluentIterable.from(Arrays.asList(securityGroup("sg-1", "default"), securityGroup("sg-2", "web"),
+                securityGroup("sg-3", "blocked")))).when(securityGroupApi).list();
+
+        modifications.clear();
+        client = new OpenstackClient(connection) {
+            @Override
+            protected synchronized void connect() {
+            }
+
+            @Override
+            public NovaApi getNovaApi() {
+                return nova;
+            }
+
+            @Override
+            protected void modifySecurityGroupOnInstanceByName(String instanceId, String groupName,
+                    String operation) {
+                modifications.add(operation + ":" + instanceId + ":" + groupName);
+            }
+        };
+    }
+
+    private void givenServerGroups(String instanceId, String... groupNames) {
+        ServerWithSecurityGroups server = mock(ServerWithSecurityGroups.class);
+        when(server.getSecurityGroupNames()).thenReturn(ImmutableSet.copyOf(groupNames));
+        when(serverApi.get(instanceId)).thenReturn(server);
+    }
+
+    @Test
+    public void testSecurityGroupsListedOnce() {
+        // a name built at run time, not the interned literal
+        String web = new StringBuilder("we").append('b').toString();
+        Assert.assertEquals(client.findSecurityGroup("i-1", web), "sg-2");
+        Assert.assertEquals(client.findSecurityGroup("i-1", "blocked"), "sg-3");
+        Assert.assertNull(client.findSecurityGroup("i-1", "missing"));
+        verify(securityGroupApi, times(1)).list();
+
+        client.invalidateSecurityGroups();
+        Assert.assertEquals(client.findSecurityGroup("i-1", "default"), "sg-1");
+        verify(securityGroupApi, times(2)).list();
+    }
+
+    @Test
+    public void testSetInstanceSecurityGroupsAppliesTheDifference() {
+        givenServerGroups("i-1", "default", "web");
+        client.setInstanceSecurityGroups("i-1", Arrays.asList("sg-3"));
+        verify(serverApi, times(1)).get("i-1");
+        Assert.assertEquals(modifications, Arrays.asList("removeSecurityGroup:i-1:default",
+                "removeSecurityGroup:i-1:web", "addSecurityGroup:i-1:blocked"));
+    }
+
+    @Test
+    public void testSetInstanceSecurityGroupsLeavesKeptGroups() {
+        givenServerGroups("i-2", "default", "blocked");
+        client.setInstanceSecurityGroups("i-2", Arrays.asList("sg-3"));
+        verify(serverApi, times(1)).get("i-2");
+        Assert.assertEquals(modifications, Arrays.asList("removeSecurityGroup:i-2:default"));
+
+        modifications.clear();
+        givenServerGroups("i-3", "blocked");
+        client.setInstanceSecurityGroups("i-3", Arrays.asList("sg-3"));
+        Assert.assertTrue(modifications.isEmpty());
+        verify(securityGroupApi, times(1)).list();
+    }
+}
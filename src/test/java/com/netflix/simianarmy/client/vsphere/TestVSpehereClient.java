@@ -18,12 +18,15 @@ package com.netflix.simianarmy.client.vsphere;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.rmi.RemoteException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.testng.annotations.Test;
 
@@ -54,8 +57,7 @@ public class TestVSpehereClient {
     public void shouldDescribeGroupsCorrectly() {
         VSphereServiceConnection connection = mock(VSphereServiceConnection.class);
         TerminationStrategy strategy = mock(PropertyBasedTerminationStrategy.class);
-        VirtualMachine[] virtualMachines = {createVMMock("vm1"), createVMMock("vm2")};
-        when(connection.describeVirtualMachines()).thenReturn(virtualMachines);
+        when(connection.describeVirtualMachineFolders()).thenReturn(createFolders("vm1", "vm2"));
 
         VSphereClient client = new VSphereClient(strategy, connection);
 
@@ -67,6 +69,26 @@ public class TestVSpehereClient {
         assertTrue(str.indexOf("group:vm2.parent.name:id:vm2.name:") >= 0, "did not describe vm2 correctly");
     }
 
+    @Test
+    public void shouldDescribeNamedGroupsOnly() {
+        VSphereServiceConnection connection = mock(VSphereServiceConnection.class);
+        TerminationStrategy strategy = mock(PropertyBasedTerminationStrategy.class);
+        when(connection.describeVirtualMachineFolders()).thenReturn(createFolders("vm1", "vm2"));
+
+        VSphereClient client = new VSphereClient(strategy, connection);
+
+        List<AutoScalingGroup> groups = client.describeAutoScalingGroups("vm2.parent.name");
+        assertEquals(flattenGroups(groups), "group:vm2.parent.name:id:vm2.name:");
+    }
+
+    private Map<String, String> createFolders(String... ids) {
+        Map<String, String> folders = new LinkedHashMap<String, String>();
+        for (String id : ids) {
+            folders.put(id + ".name", id + ".parent.name");
+        }
+        return folders;
+    }
+
     private String flattenGroups(List<AutoScalingGroup> groups) {
         StringBuilder buf = new StringBuilder();
         for (AutoScalingGroup asg : groups) {
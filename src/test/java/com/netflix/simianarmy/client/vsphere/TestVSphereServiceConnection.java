@@ -24,6 +24,8 @@ import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 
 import java.rmi.RemoteException;
+import java.util.Hashtable;
+import java.util.Map;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -31,9 +33,11 @@ import org.testng.annotations.Test;
 import com.amazonaws.AmazonServiceException;
 import com.netflix.simianarmy.basic.BasicConfiguration;
 import com.vmware.vim25.InvalidProperty;
+import com.vmware.vim25.ManagedObjectReference;
 import com.vmware.vim25.RuntimeFault;
 import com.vmware.vim25.mo.InventoryNavigator;
 import com.vmware.vim25.mo.ManagedEntity;
+import com.vmware.vim25.mo.ManagedObject;
 import com.vmware.vim25.mo.VirtualMachine;
 
 /**
@@ -131,6 +135,80 @@ public class TestVSphereServiceConnection {
         service.describeVirtualMachines();
     }
 
+    @Test
+    public void shouldDescribeFoldersWithOneCallPerType() throws RemoteException {
+        final ManagedObjectReference folder = mor("Folder", "group-1");
+        final ManagedObjectReference vApp = mor("VirtualApp", "resgroup-2");
+        VSphereServiceConnectionWithMockedInventoryNavigator service =
+                new VSphereServiceConnectionWithMockedInventoryNavigator() {
+                    @Override
+                    protected Hashtable<?, ?>[] retrieveProperties(ManagedObject[] objects, String type,
+                            String[] properties) {
+                        if (VIRTUAL_MACHINE_TYPE_NAME.equals(type)) {
+                            // vm4 was deleted between the search and the retrieval
+                            return new Hashtable<?, ?>[] {props("name", "vm1", "parent", folder),
+                                props("name", "vm2", "parent", vApp), props("name", "vm3", "parent", folder), null};
+                        } else if ("Folder".equals(type)) {
+                            assertEquals(objects.length, 1);
+                            return rowPerDistinctObject(objects, folder, props("name", "folder"));
+                        }
+                        assertEquals(type, "VirtualApp");
+                        return rowPerDistinctObject(objects, vApp, props("name", "vapp"));
+                    }
+
+                    @Override
+                    protected ManagedEntity[] createManagedEntities(ManagedObjectReference[] mors) {
+                        ManagedEntity[] entities = new ManagedEntity[mors.length];
+                        for (int i = 0; i < mors.length; i++) {
+                            entities[i] = mock(ManagedEntity.class);
+                            when(entities[i].getMOR()).thenReturn(mors[i]);
+                        }
+                        return entities;
+                    }
+                };
+        ManagedEntity[] meMocks = new ManagedEntity[] {mock(VirtualMachine.class), mock(VirtualMachine.class),
+            mock(VirtualMachine.class), mock(VirtualMachine.class)};
+        when(service.getInventoryNavigatorMock().searchManagedEntities(VIRTUAL_MACHINE_TYPE_NAME)).thenReturn(meMocks);
+
+        Map<String, String> folders = service.describeVirtualMachineFolders();
+
+        assertEquals(folders.size(), 3);
+        assertEquals(folders.get("vm1"), "folder");
+        assertEquals(folders.get("vm2"), "vapp");
+        assertEquals(folders.get("vm3"), "folder");
+    }
+
+    private static ManagedObjectReference mor(String type, String value) {
+        ManagedObjectReference mor = new ManagedObjectReference();
+        mor.setType(type);
+        mor.setVal(value);
+        return mor;
+    }
+
+    /**
+     * Mimics PropertyCollectorUtil against vCenter: the result has a slot per object asked for, but vCenter
+     * returns one row per distinct object, so the slots of repeated objects stay empty.
+     */
+    private static Hashtable<?, ?>[] rowPerDistinctObject(ManagedObject[] objects, ManagedObjectReference mor,
+            Hashtable<?, ?> row) {
+        Hashtable<?, ?>[] rows = new Hashtable<?, ?>[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            if (mor.getVal().equals(objects[i].getMOR().getVal())) {
+                rows[i] = row;
+                break;
+            }
+        }
+        return rows;
+    }
+
+    private static Hashtable<String, Object> props(Object... keyValues) {
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            props.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return props;
+    }
+
     // The API class ServerConnection is final and can therefore not be mocked.
     // It's possible to work around this using a wrapper, but this is a lot of
     // fake code that needs to be written and tested again just to test that
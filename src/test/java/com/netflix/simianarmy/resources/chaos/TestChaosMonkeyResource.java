@@ -20,7 +20,9 @@
 package com.netflix.simianarmy.resources.chaos;
 
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,8 +37,11 @@ import javax.ws.rs.core.UriInfo;
 
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -44,6 +49,7 @@ import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
 import com.netflix.simianarmy.EventType;
+import com.netflix.simianarmy.AbstractMonkeyRecorder;
 import com.netflix.simianarmy.MonkeyRecorder;
 import com.netflix.simianarmy.MonkeyRunner;
 import com.netflix.simianarmy.MonkeyType;
@@ -68,7 +74,7 @@ public class TestChaosMonkeyResource {
     @Mock
     private UriInfo mockUriInfo;
     @Mock
-    private static MonkeyRecorder mockRecorder;
+    private static AbstractMonkeyRecorder mockRecorder;
 
     @BeforeTest
     public void init() {
@@ -172,12 +178,18 @@ public class TestChaosMonkeyResource {
 
         when(mockUriInfo.getQueryParameters()).thenReturn(queryParams);
 
-        @SuppressWarnings("unchecked")
-        // fix when Matcher.anyMapOf is available
-        Map<String, String> anyMap = anyMap();
-
-        when(mockRecorder.findEvents(any(MonkeyType.class), any(EventType.class), anyMap, any(Date.class))).thenReturn(
-                Arrays.asList(mkEvent("i-1234356780"), mkEvent("i-123456781")));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                MonkeyRecorder.EventVisitor visitor = (MonkeyRecorder.EventVisitor) invocation.getArguments()[6];
+                for (MonkeyRecorder.Event evt : Arrays.asList(mkEvent("i-1234356780"), mkEvent("i-123456781"))) {
+                    visitor.visit(evt);
+                }
+                return null;
+            }
+        }).when(mockRecorder).visitEvents(any(MonkeyType.class), any(EventType.class),
+                Matchers.<Map<String, String>>any(), any(Date.class),
+                anyInt(), any(MonkeyRecorder.Order.class), any(MonkeyRecorder.EventVisitor.class));
 
         try {
             Response resp = resource.getChaosEvents(mockUriInfo);
@@ -187,8 +199,9 @@ public class TestChaosMonkeyResource {
             Assert.fail("getChaosEvents throws exception");
         }
 
-        verify(mockRecorder).findEvents(monkeyTypeArg.capture(), eventTypeArg.capture(), queryArg.capture(),
-                dateArg.capture());
+        verify(mockRecorder).visitEvents(monkeyTypeArg.capture(), eventTypeArg.capture(), queryArg.capture(),
+                dateArg.capture(), eq(0), eq(MonkeyRecorder.Order.NEWEST_FIRST),
+                any(MonkeyRecorder.EventVisitor.class));
 
         Assert.assertEquals(monkeyTypeArg.getValue(), ChaosMonkey.Type.CHAOS);
         Assert.assertEquals(eventTypeArg.getValue(), ChaosMonkey.EventTypes.CHAOS_TERMINATION);